@@ -18,7 +18,30 @@ public @interface RpcClient {
 
     int replyTimeout() default 2000;
 
+    /**
+     * SYNC 幂等方法的最大尝试次数, 重试按 simple-rpc.client-retry-* 退避并受重试预算限制
+     */
     int maxAttempts() default 3;
 
     RpcType type() default RpcType.SYNC;
+
+    /**
+     * 编解码名称, 为空时使用 simple-rpc.codec
+     */
+    String codec() default "";
+
+    /**
+     * ASYNC 批量发送数量, 大于 1 时开启, 达到数量、simple-rpc.client-batch-max-bytes 或 simple-rpc.client-batch-linger 时发送
+     */
+    int batchSize() default 0;
+
+    /**
+     * 压缩算法: none、gzip、lz4, 为空时使用 simple-rpc.compression
+     */
+    String compression() default "";
+
+    /**
+     * SYNC 每个方法独立熔断, 参数通过 simple-rpc.client-circuit-breaker-* 配置
+     */
+    boolean circuitBreaker() default false;
 }
@@ -13,4 +13,31 @@ import java.lang.annotation.*;
 public @interface RpcClientMethod {
 
     String value() default "";
+
+    /**
+     * 结果缓存时间(毫秒), 大于 0 时缓存成功的结果, 只支持 SYNC-RpcClient 的只读方法
+     */
+    long cacheTtl() default 0;
+
+    /**
+     * 结果缓存最大数量, LRU 淘汰
+     */
+    int cacheMaxSize() default 1024;
+
+    /**
+     * 合并并发的相同调用, 同一参数的调用在途时, 后续调用等待其结果而不重复发送, 只支持 SYNC-RpcClient 的只读方法
+     */
+    boolean coalesce() default false;
+
+    /**
+     * 是否幂等, 只有幂等方法在发送失败或超时时按 @RpcClient.maxAttempts 重试, 只支持 SYNC-RpcClient
+     */
+    boolean idempotent() default false;
+
+    /**
+     * 对冲请求: 超过该时间(毫秒)未回复时再发送一份相同请求, 取先到的回复; 0 不开启, -1 按该方法最近调用耗时的 p95 计算, 不小于 simple-rpc.client-hedge-min-delay
+     * <p>
+     * 对冲请求受 simple-rpc.client-hedge-budget-percent 预算限制, 只支持 SYNC-RpcClient 的幂等方法
+     */
+    long hedgeDelay() default 0;
 }
@@ -24,4 +24,34 @@ public @interface RpcServer {
     int threadNum() default 1;
 
     RpcType[] type() default {RpcType.SYNC, RpcType.ASYNC};
+
+    /**
+     * 请求未携带可识别的 contentType 时使用的编解码名称, 为空时使用 simple-rpc.codec
+     */
+    String codec() default "";
+
+    /**
+     * 每个消费者的 prefetch, 为 0 时使用 simple-rpc.server-prefetch-count
+     */
+    int prefetchCount() default 0;
+
+    /**
+     * 批量确认数量, 为 0 时使用 simple-rpc.server-ack-batch-size
+     */
+    int ackBatchSize() default 0;
+
+    /**
+     * ASYNC 批量消费数量, 大于 1 时开启; List 参数的 RpcServerMethod 一次收到同一方法的多条消息
+     */
+    int batchSize() default 0;
+
+    /**
+     * ASYNC 批量消费时等待下一条消息的最长时间(毫秒), 超时则处理已收到的消息
+     */
+    long batchTimeout() default 100;
+
+    /**
+     * 压缩算法: none、gzip、lz4, 为空时使用 simple-rpc.compression
+     */
+    String compression() default "";
 }
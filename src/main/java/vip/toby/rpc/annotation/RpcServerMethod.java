@@ -17,4 +17,16 @@ public @interface RpcServerMethod {
 
     boolean allowDuplicate() default false;
 
+    /**
+     * 返回报文缓存时间(毫秒), 大于 0 时相同请求直接返回缓存的成功报文, 只支持 SYNC-RpcServer 的只读方法
+     * <p>
+     * 命中时不做重复检测和参数校验, 需同时设置 allowDuplicate = true, 否则启动时报错
+     */
+    long cacheTtl() default 0;
+
+    /**
+     * 返回报文缓存最大数量, LRU 淘汰
+     */
+    int cacheMaxSize() default 1024;
+
 }
@@ -0,0 +1,47 @@
+package vip.toby.rpc.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RpcResultCache 注册表, 名称为 rpcName.command
+ * <p>
+ * 由 RpcClientProxyFactory 注册为 Spring Bean(rpcCacheManager), 同一上下文的 RpcClient 共用, 不同上下文互不影响
+ *
+ * @author toby
+ */
+public final class RpcCacheManager {
+
+    private final Map<String, RpcResultCache> cacheMap = new ConcurrentHashMap<>();
+
+    RpcCacheManager() {
+    }
+
+    /**
+     * 获取或创建缓存, 同名缓存以首次创建的配置为准
+     */
+    public RpcResultCache getOrCreate(String name, int maxSize, long ttl) {
+        return this.cacheMap.computeIfAbsent(name, key -> new RpcResultCache(key, maxSize, ttl));
+    }
+
+    /**
+     * 通过名称获取缓存, 不存在返回 null
+     */
+    public RpcResultCache getCache(String name) {
+        return this.cacheMap.get(name);
+    }
+
+    public Collection<RpcResultCache> getCaches() {
+        return Collections.unmodifiableCollection(this.cacheMap.values());
+    }
+
+    /**
+     * 清空所有缓存
+     */
+    public void invalidateAll() {
+        this.cacheMap.values().forEach(RpcResultCache::invalidateAll);
+    }
+
+}
@@ -0,0 +1,139 @@
+package vip.toby.rpc.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU 淘汰 + 写入后过期的缓存, 供客户端结果缓存及服务端返回报文缓存共用
+ * <p>
+ * 按 key 的哈希分为多个段, 每段各自加锁并按访问顺序淘汰; 命中也要调整访问顺序, 分段后并发读不再争用同一把锁,
+ * 代价是淘汰的是所在段最久未访问的记录, 而不是全局最久未访问的
+ *
+ * @author toby
+ */
+public final class RpcLruCache<K, V> {
+
+    private final static int MAX_SEGMENTS = 16;
+    // 每段至少容纳的数量, 容量较小时少分段, 避免淘汰过于不均
+    private final static int MIN_SEGMENT_SIZE = 16;
+
+    private final long ttlNanos;
+    private final Segment<K, V>[] segments;
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maxSize 最大数量
+     * @param ttl     写入后过期时间(毫秒)
+     */
+    @SuppressWarnings("unchecked")
+    public RpcLruCache(int maxSize, long ttl) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && maxSize / (segmentCount * 2) >= MIN_SEGMENT_SIZE) {
+            segmentCount *= 2;
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // 余数分给前几段, 总数不超过 maxSize
+            this.segments[i] = new Segment<>(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0), this.evictionCount);
+        }
+    }
+
+    private Segment<K, V> segment(Object key) {
+        int hash = key.hashCode();
+        return this.segments[(hash ^ (hash >>> 16)) & (this.segments.length - 1)];
+    }
+
+    /**
+     * 获取未过期的值, 不存在返回 null
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.writeTime >= this.ttlNanos) {
+                segment.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value) {
+        Entry<V> entry = new Entry<>(value, System.nanoTime());
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    public void invalidate(K key) {
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getEvictionCount() {
+        return this.evictionCount.sum();
+    }
+
+    /**
+     * accessOrder = true, 按访问顺序淘汰
+     */
+    private static class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+
+        private final int maxSize;
+        private final LongAdder evictionCount;
+
+        private Segment(int maxSize, LongAdder evictionCount) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictionCount = evictionCount;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() > this.maxSize) {
+                this.evictionCount.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long writeTime;
+
+        private Entry(V value, long writeTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package vip.toby.rpc.cache;
+
+import vip.toby.rpc.entity.OperateStatus;
+import vip.toby.rpc.entity.RpcResult;
+import vip.toby.rpc.entity.ServerStatus;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 调用结果缓存, LRU 淘汰 + 写入后过期
+ * <p>
+ * 只缓存 ServerStatus 与 OperateStatus 均为 SUCCESS 的结果; 缓存的 RpcResult 为共享对象, 调用方不能修改
+ *
+ * @author toby
+ */
+public final class RpcResultCache {
+
+    private final String name;
+    private final RpcLruCache<String, RpcResult> lruCache;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    RpcResultCache(String name, int maxSize, long ttl) {
+        if (maxSize < 1 || ttl < 1) {
+            throw new RuntimeException("RpcResultCache: " + name + " maxSize 和 ttl 必须大于 0");
+        }
+        this.name = name;
+        this.lruCache = new RpcLruCache<>(maxSize, ttl);
+    }
+
+    /**
+     * 是否可以缓存, 调用失败、超时及业务失败均不缓存
+     */
+    public static boolean isCacheable(RpcResult rpcResult) {
+        return rpcResult != null && rpcResult.getServerStatus() == ServerStatus.SUCCESS && rpcResult.getServerResult() != null && rpcResult.getServerResult().getOperateStatus() == OperateStatus.SUCCESS;
+    }
+
+    /**
+     * 获取未过期的结果, 不存在返回 null
+     */
+    public RpcResult get(String key) {
+        RpcResult rpcResult = this.lruCache.get(key);
+        if (rpcResult == null) {
+            this.missCount.increment();
+        } else {
+            this.hitCount.increment();
+        }
+        return rpcResult;
+    }
+
+    public void put(String key, RpcResult rpcResult) {
+        if (!isCacheable(rpcResult)) {
+            return;
+        }
+        this.lruCache.put(key, rpcResult);
+    }
+
+    public void invalidate(String key) {
+        this.lruCache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        this.lruCache.invalidateAll();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int size() {
+        return this.lruCache.size();
+    }
+
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return this.lruCache.getEvictionCount();
+    }
+
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long requestCount = hitCount + getMissCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcResultCache-" + this.name + ", Size: " + size() + ", Hit: " + getHitCount() + ", Miss: " + getMissCount() + ", Eviction: " + getEvictionCount();
+    }
+
+}
@@ -0,0 +1,81 @@
+package vip.toby.rpc.client;
+
+import vip.toby.rpc.entity.RpcResult;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * SYNC-RpcClient 批量调用, 多个调用合并为一条消息发送, 一次往返返回所有结果
+ * <p>
+ * 用法: RpcBatch.of(rpcClient).add(c -> c.methodName1(1)).add(c -> c.methodName1(2)).execute()
+ *
+ * @author toby
+ */
+public final class RpcBatch<T> {
+
+    private final RpcClientProxy<T> rpcClientProxy;
+    private final T recorder;
+    private final List<Method> methods = new ArrayList<>();
+    private final List<Object[]> argsList = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    private RpcBatch(RpcClientProxy<T> rpcClientProxy) {
+        this.rpcClientProxy = rpcClientProxy;
+        Class<T> rpcClientInterface = rpcClientProxy.getRpcClientInterface();
+        // 只记录调用, 不发送
+        this.recorder = (T) Proxy.newProxyInstance(rpcClientInterface.getClassLoader(), new Class<?>[]{rpcClientInterface}, (proxy, method, args) -> {
+            if (Object.class.equals(method.getDeclaringClass())) {
+                return method.invoke(this, args);
+            }
+            this.methods.add(method);
+            this.argsList.add(args == null ? new Object[0] : args);
+            return null;
+        });
+    }
+
+    /**
+     * 创建批量调用, rpcClient 必须为注入的 SYNC-RpcClient
+     */
+    public static <T> RpcBatch<T> of(T rpcClient) {
+        return new RpcBatch<>(RpcClientProxy.of(rpcClient));
+    }
+
+    /**
+     * 添加调用, 返回值忽略
+     */
+    public RpcBatch<T> add(Consumer<T> call) {
+        call.accept(this.recorder);
+        return this;
+    }
+
+    public int size() {
+        return this.methods.size();
+    }
+
+    /**
+     * 阻塞执行, 按添加顺序返回结果
+     */
+    public List<RpcResult> execute() {
+        if (this.methods.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return this.rpcClientProxy.invokeBatch(this.methods, this.argsList);
+    }
+
+    /**
+     * 非阻塞执行, 按添加顺序返回结果
+     */
+    public CompletableFuture<List<RpcResult>> executeAsync() {
+        if (this.methods.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return this.rpcClientProxy.invokeBatchAsync(this.methods, this.argsList);
+    }
+
+}
@@ -0,0 +1,164 @@
+package vip.toby.rpc.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.compress.RpcCompressor;
+import vip.toby.rpc.compress.RpcCompressorFactory;
+import vip.toby.rpc.entity.RpcProtocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ASYNC 批量发送, 同一 RpcClient 的调用按数量、大小或等待时间合并为一条批量消息
+ * <p>
+ * 每个调用的完成回调在所在批次发送后执行, 成功时参数为 null, 失败时为发送异常
+ *
+ * @author toby
+ */
+class RpcBatchingSender implements DisposableBean {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RpcBatchingSender.class);
+
+    private final static ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "simple-rpc-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RabbitTemplate sender;
+    private final RpcCodec rpcCodec;
+    private final int batchSize;
+    private final int batchMaxBytes;
+    private final int batchLinger;
+    private final RpcCompressor rpcCompressor;
+    private final int compressionThreshold;
+    private List<byte[]> bodies = new ArrayList<>();
+    private List<Consumer<Throwable>> callbacks = new ArrayList<>();
+    private int bytes;
+    private ScheduledFuture<?> lingerFuture;
+
+    RpcBatchingSender(RabbitTemplate sender, RpcCodec rpcCodec, int batchSize, int batchMaxBytes, int batchLinger, RpcCompressor rpcCompressor, int compressionThreshold) {
+        this.sender = sender;
+        this.rpcCodec = rpcCodec;
+        this.batchSize = batchSize;
+        this.batchMaxBytes = batchMaxBytes;
+        this.batchLinger = batchLinger;
+        this.rpcCompressor = rpcCompressor;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * 加入批次, 达到数量或大小时立即发送, 否则最多等待 batchLinger 毫秒
+     *
+     * @param callback 所在批次发送后执行
+     */
+    void send(byte[] body, Consumer<Throwable> callback) {
+        Batch batch = null;
+        synchronized (this) {
+            this.bodies.add(body);
+            this.callbacks.add(callback);
+            this.bytes += body.length;
+            if (this.bodies.size() >= this.batchSize || this.bytes >= this.batchMaxBytes) {
+                batch = take();
+            } else if (this.lingerFuture == null) {
+                this.lingerFuture = SCHEDULER.schedule(this::flush, this.batchLinger, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (batch != null) {
+            // 在锁外发送, 不阻塞其他调用线程加入批次; 批次中其他调用已返回, 由回调记录, 异常仍抛给当前调用方
+            RuntimeException exception = sendBatch(batch);
+            if (exception != null) {
+                throw exception;
+            }
+        }
+    }
+
+    void flush() {
+        Batch batch;
+        synchronized (this) {
+            batch = take();
+        }
+        if (batch != null) {
+            RuntimeException exception = sendBatch(batch);
+            if (exception != null) {
+                LOGGER.error(exception.getMessage(), exception);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // 关闭前发送未满的批次
+        flush();
+    }
+
+    private Batch take() {
+        if (this.lingerFuture != null) {
+            this.lingerFuture.cancel(false);
+            this.lingerFuture = null;
+        }
+        if (this.bodies.isEmpty()) {
+            return null;
+        }
+        Batch batch = new Batch(this.bodies, this.callbacks);
+        this.bodies = new ArrayList<>(batch.bodies.size());
+        this.callbacks = new ArrayList<>(batch.bodies.size());
+        this.bytes = 0;
+        return batch;
+    }
+
+    /**
+     * 发送批次并执行每个调用的回调, 返回发送异常
+     */
+    private RuntimeException sendBatch(Batch batch) {
+        RuntimeException exception = null;
+        try {
+            publish(batch.bodies);
+        } catch (RuntimeException e) {
+            LOGGER.error("Batch Send Exception! Size: " + batch.bodies.size() + ", RoutingKey: " + this.sender.getRoutingKey());
+            exception = e;
+        }
+        for (Consumer<Throwable> callback : batch.callbacks) {
+            try {
+                callback.accept(exception);
+            } catch (Exception e) {
+                LOGGER.error(e.getMessage(), e);
+            }
+        }
+        return exception;
+    }
+
+    private void publish(List<byte[]> batch) {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(this.rpcCodec.getContentType());
+        messageProperties.setCorrelationId(UUID.randomUUID().toString());
+        messageProperties.setHeader(RpcProtocol.BATCH_HEADER, true);
+        byte[] body = RpcCompressorFactory.compress(this.rpcCompressor, this.compressionThreshold, messageProperties.getHeaders(), this.rpcCodec.encodeArray(batch));
+        this.sender.send(new Message(body, messageProperties));
+        LOGGER.debug("Batch Send, Size: " + batch.size() + ", RoutingKey: " + this.sender.getRoutingKey());
+    }
+
+    private static class Batch {
+
+        private final List<byte[]> bodies;
+        private final List<Consumer<Throwable>> callbacks;
+
+        private Batch(List<byte[]> bodies, List<Consumer<Throwable>> callbacks) {
+            this.bodies = bodies;
+            this.callbacks = callbacks;
+        }
+    }
+
+}
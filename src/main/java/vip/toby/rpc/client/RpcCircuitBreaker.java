@@ -0,0 +1,218 @@
+package vip.toby.rpc.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 熔断器, 无锁实现
+ * <p>
+ * CLOSED: 按滑动窗口统计失败率, 调用数达到 minimumCalls 且失败率达到 failureRate 时打开;
+ * OPEN: 直接返回 Service Unavailable, 经过 openTime 后半开;
+ * HALF_OPEN: 放行 halfOpenCalls 个探测调用, 全部成功时关闭, 任一失败时重新打开
+ * <p>
+ * 状态、打开时间及半开计数在同一个不可变的 Phase 中整体 CAS 替换, 其他线程看到新状态时计数已是初始值;
+ * 调用结果按放行时的 Phase 记录, 状态变化前放行的调用不影响新状态
+ *
+ * @author toby
+ */
+public final class RpcCircuitBreaker {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RpcCircuitBreaker.class);
+
+    private final static int BUCKETS = 10;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final RpcCircuitBreakerManager circuitBreakerManager;
+    private final String name;
+    private final int failureRate;
+    private final int minimumCalls;
+    private final long bucketTime;
+    private final long openTime;
+    private final int halfOpenCalls;
+    private final AtomicReference<Phase> phase = new AtomicReference<>(new Phase(State.CLOSED, 0));
+    // 滑动窗口: 每个桶的起始序号、调用数、失败数
+    private final AtomicLongArray bucketEpochs = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray bucketCalls = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray bucketFailures = new AtomicLongArray(BUCKETS);
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder openCount = new LongAdder();
+
+    RpcCircuitBreaker(RpcCircuitBreakerManager circuitBreakerManager, String name, int failureRate, int minimumCalls, int window, int openTime, int halfOpenCalls) {
+        if (failureRate < 1 || failureRate > 100 || minimumCalls < 1 || window < BUCKETS || openTime < 1 || halfOpenCalls < 1) {
+            throw new RuntimeException("RpcCircuitBreaker: " + name + " 配置错误, failureRate 取值 1-100, window 不能小于 " + BUCKETS + ", 其余必须大于 0");
+        }
+        this.circuitBreakerManager = circuitBreakerManager;
+        this.name = name;
+        this.failureRate = failureRate;
+        this.minimumCalls = minimumCalls;
+        this.bucketTime = window / BUCKETS;
+        this.openTime = openTime;
+        this.halfOpenCalls = halfOpenCalls;
+        resetWindow();
+    }
+
+    /**
+     * 是否放行调用, 放行时返回当前 Phase, 拒绝时返回 null; 放行后必须以返回的 Phase 调用 onSuccess、onFailure 或 onIgnored 之一
+     */
+    Phase tryAcquire() {
+        Phase current = this.phase.get();
+        if (current.state == State.OPEN) {
+            if (System.currentTimeMillis() - current.openedTime < this.openTime) {
+                this.rejectedCount.increment();
+                return null;
+            }
+            transition(current, State.HALF_OPEN);
+            current = this.phase.get();
+        }
+        if (current.state == State.HALF_OPEN) {
+            if (current.halfOpenPermits.incrementAndGet() > this.halfOpenCalls) {
+                current.halfOpenPermits.decrementAndGet();
+                this.rejectedCount.increment();
+                return null;
+            }
+            return current;
+        }
+        return current.state == State.CLOSED ? current : tryAcquire();
+    }
+
+    /**
+     * 放行后状态已变化的调用结果属于上一个 Phase, 不计入当前状态
+     */
+    void onSuccess(Phase acquired) {
+        if (this.phase.get() != acquired) {
+            return;
+        }
+        if (acquired.state == State.HALF_OPEN) {
+            if (acquired.halfOpenSuccesses.incrementAndGet() >= this.halfOpenCalls) {
+                // 半开期间不使用滑动窗口, 先重置再关闭
+                resetWindow();
+                transition(acquired, State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    void onFailure(Phase acquired) {
+        if (this.phase.get() != acquired) {
+            return;
+        }
+        if (acquired.state == State.HALF_OPEN) {
+            open(acquired);
+            return;
+        }
+        record(true);
+        long calls = 0;
+        long failures = 0;
+        long epoch = System.currentTimeMillis() / this.bucketTime;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (epoch - this.bucketEpochs.get(i) < BUCKETS) {
+                calls += this.bucketCalls.get(i);
+                failures += this.bucketFailures.get(i);
+            }
+        }
+        if (calls >= this.minimumCalls && failures * 100 >= calls * this.failureRate) {
+            open(acquired);
+        }
+    }
+
+    /**
+     * 调用被取消, 不计入统计; 只有在同一个半开 Phase 中取得的名额才归还
+     */
+    void onIgnored(Phase acquired) {
+        if (acquired.state == State.HALF_OPEN && this.phase.get() == acquired) {
+            acquired.halfOpenPermits.decrementAndGet();
+        }
+    }
+
+    private void open(Phase from) {
+        if (transition(from, State.OPEN)) {
+            this.openCount.increment();
+        }
+    }
+
+    private boolean transition(Phase from, State to) {
+        Phase next = new Phase(to, to == State.OPEN ? System.currentTimeMillis() : from.openedTime);
+        if (!this.phase.compareAndSet(from, next)) {
+            return false;
+        }
+        LOGGER.warn("Circuit Breaker " + from.state + " -> " + to + ", " + this.name);
+        this.circuitBreakerManager.fireStateChange(this, from.state, to);
+        return true;
+    }
+
+    private void record(boolean failure) {
+        long epoch = System.currentTimeMillis() / this.bucketTime;
+        int index = (int) (epoch % BUCKETS);
+        long bucketEpoch = this.bucketEpochs.get(index);
+        // 桶过期时由一个线程重置, 并发时的少量误差可以接受
+        if (bucketEpoch != epoch && this.bucketEpochs.compareAndSet(index, bucketEpoch, epoch)) {
+            this.bucketCalls.set(index, 0);
+            this.bucketFailures.set(index, 0);
+        }
+        this.bucketCalls.incrementAndGet(index);
+        if (failure) {
+            this.bucketFailures.incrementAndGet(index);
+        }
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.bucketEpochs.set(i, Long.MIN_VALUE / 2);
+            this.bucketCalls.set(i, 0);
+            this.bucketFailures.set(i, 0);
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public State getState() {
+        return this.phase.get().state;
+    }
+
+    /**
+     * 熔断时直接拒绝的调用数量
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    /**
+     * 打开次数
+     */
+    public long getOpenCount() {
+        return this.openCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RpcCircuitBreaker-" + this.name + ", State: " + getState() + ", Rejected: " + getRejectedCount() + ", Opened: " + getOpenCount();
+    }
+
+    /**
+     * 一次状态及其打开时间、半开计数, 状态变化时整体替换; 同时作为放行凭证, 调用结果只计入放行时的 Phase
+     */
+    static final class Phase {
+
+        private final State state;
+        private final long openedTime;
+        private final AtomicInteger halfOpenPermits = new AtomicInteger();
+        private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+        private Phase(State state, long openedTime) {
+            this.state = state;
+            this.openedTime = openedTime;
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package vip.toby.rpc.client;
+
+/**
+ * 熔断器状态变化监听, 在触发变化的调用线程执行, 必须足够轻量
+ *
+ * @author toby
+ */
+@FunctionalInterface
+public interface RpcCircuitBreakerListener {
+
+    /**
+     * 状态变化
+     *
+     * @param circuitBreaker 熔断器
+     * @param from           原状态
+     * @param to             新状态
+     */
+    void onStateChange(RpcCircuitBreaker circuitBreaker, RpcCircuitBreaker.State from, RpcCircuitBreaker.State to);
+
+}
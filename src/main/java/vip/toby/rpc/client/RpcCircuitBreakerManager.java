@@ -0,0 +1,70 @@
+package vip.toby.rpc.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vip.toby.rpc.properties.RpcProperties;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * RpcCircuitBreaker 注册表, 名称为 rpcName.command
+ * <p>
+ * 由 RpcClientProxyFactory 注册为 Spring Bean(rpcCircuitBreakerManager), 同一上下文的 RpcClient 共用, 不同上下文互不影响
+ *
+ * @author toby
+ */
+public final class RpcCircuitBreakerManager {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RpcCircuitBreakerManager.class);
+
+    private final Map<String, RpcCircuitBreaker> circuitBreakerMap = new ConcurrentHashMap<>();
+    private final List<RpcCircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+
+    RpcCircuitBreakerManager() {
+    }
+
+    /**
+     * 获取或创建熔断器, 同名熔断器以首次创建的配置为准
+     */
+    RpcCircuitBreaker getOrCreate(String name, RpcProperties rpcProperties) {
+        return this.circuitBreakerMap.computeIfAbsent(name, key -> new RpcCircuitBreaker(this, key, rpcProperties.getClientCircuitBreakerFailureRate(), rpcProperties.getClientCircuitBreakerMinimumCalls(), rpcProperties.getClientCircuitBreakerWindow(), rpcProperties.getClientCircuitBreakerOpenTime(), rpcProperties.getClientCircuitBreakerHalfOpenCalls()));
+    }
+
+    /**
+     * 通过名称获取熔断器, 不存在返回 null
+     */
+    public RpcCircuitBreaker getCircuitBreaker(String name) {
+        return this.circuitBreakerMap.get(name);
+    }
+
+    public Collection<RpcCircuitBreaker> getCircuitBreakers() {
+        return Collections.unmodifiableCollection(this.circuitBreakerMap.values());
+    }
+
+    /**
+     * 添加状态变化监听
+     */
+    public void addListener(RpcCircuitBreakerListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(RpcCircuitBreakerListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    void fireStateChange(RpcCircuitBreaker circuitBreaker, RpcCircuitBreaker.State from, RpcCircuitBreaker.State to) {
+        for (RpcCircuitBreakerListener listener : this.listeners) {
+            try {
+                listener.onStateChange(circuitBreaker, from, to);
+            } catch (Exception e) {
+                LOGGER.error(e.getMessage(), e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package vip.toby.rpc.client;
+
+import vip.toby.rpc.cache.RpcResultCache;
+
+import java.lang.reflect.Proxy;
+import java.util.function.Consumer;
+
+/**
+ * RpcClient 结果缓存失效
+ * <p>
+ * 用法: RpcClientCache.invalidate(rpcClient, c -> c.methodName1(1))
+ *
+ * @author toby
+ */
+public final class RpcClientCache {
+
+    private RpcClientCache() {
+    }
+
+    /**
+     * 使与该调用参数相同的缓存失效, 调用只记录不发送
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void invalidate(T rpcClient, Consumer<T> call) {
+        RpcClientProxy<T> rpcClientProxy = RpcClientProxy.of(rpcClient);
+        Class<T> rpcClientInterface = rpcClientProxy.getRpcClientInterface();
+        T recorder = (T) Proxy.newProxyInstance(rpcClientInterface.getClassLoader(), new Class<?>[]{rpcClientInterface}, (proxy, method, args) -> {
+            if (Object.class.equals(method.getDeclaringClass())) {
+                return method.invoke(rpcClientProxy, args);
+            }
+            rpcClientProxy.invalidateCache(method, args == null ? new Object[0] : args);
+            return null;
+        });
+        call.accept(recorder);
+    }
+
+    /**
+     * 清空该 RpcClient 所有方法的缓存
+     */
+    public static <T> void invalidateAll(T rpcClient) {
+        RpcClientProxy.of(rpcClient).invalidateAllCache();
+    }
+
+    /**
+     * 获取该 RpcClient 指定方法的缓存, command 为 RpcClientMethod 的 value 或方法名, 未开启缓存返回 null
+     */
+    public static <T> RpcResultCache getCache(T rpcClient, String command) {
+        return RpcClientProxy.of(rpcClient).getResultCache(command);
+    }
+
+}
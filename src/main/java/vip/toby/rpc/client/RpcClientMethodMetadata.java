@@ -0,0 +1,204 @@
+package vip.toby.rpc.client;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.parser.deserializer.JavaBeanDeserializer;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.apache.commons.lang3.StringUtils;
+import vip.toby.rpc.annotation.RpcClientMethod;
+import vip.toby.rpc.cache.RpcCacheManager;
+import vip.toby.rpc.cache.RpcResultCache;
+import vip.toby.rpc.entity.RpcResult;
+import vip.toby.rpc.entity.RpcType;
+import vip.toby.rpc.metrics.RpcMethodMetrics;
+import vip.toby.rpc.metrics.RpcMetrics;
+import vip.toby.rpc.properties.RpcProperties;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RpcClientMethod 元数据, 构建代理时解析, 调用时只读
+ *
+ * @author toby
+ */
+class RpcClientMethodMetadata {
+
+    private final String command;
+    private final String[] parameterNames;
+    private final ParameterKind[] parameterKinds;
+    private final ReturnKind returnKind;
+    private final RpcResultCache resultCache;
+    private final Map<String, CompletableFuture<RpcResult>> inFlightMap;
+    private final RpcCircuitBreaker circuitBreaker;
+    private final boolean idempotent;
+    private final long hedgeDelay;
+    private final RpcLatencyHistogram latencyHistogram;
+    private final long hedgeMinDelay;
+    private final RpcMethodMetrics methodMetrics;
+
+    RpcClientMethodMetadata(String rpcName, Method method, RpcClientMethod rpcClientMethod, ReturnKind returnKind, RpcProperties rpcProperties, RpcCircuitBreakerManager circuitBreakerManager, RpcCacheManager cacheManager, RpcType rpcType, RpcMetrics rpcMetrics) {
+        String command = rpcClientMethod.value();
+        if (StringUtils.isBlank(command)) {
+            command = method.getName();
+        }
+        this.command = command;
+        this.returnKind = returnKind;
+        this.resultCache = rpcClientMethod.cacheTtl() > 0 ? cacheManager.getOrCreate(rpcName + "." + command, rpcClientMethod.cacheMaxSize(), rpcClientMethod.cacheTtl()) : null;
+        this.inFlightMap = rpcClientMethod.coalesce() ? new ConcurrentHashMap<>() : null;
+        this.circuitBreaker = circuitBreakerManager != null ? circuitBreakerManager.getOrCreate(rpcName + "." + command, rpcProperties) : null;
+        this.idempotent = rpcClientMethod.idempotent();
+        this.hedgeDelay = rpcClientMethod.hedgeDelay();
+        this.latencyHistogram = this.hedgeDelay < 0 ? new RpcLatencyHistogram(95) : null;
+        this.hedgeMinDelay = Math.max(1, rpcProperties.getClientHedgeMinDelay());
+        this.methodMetrics = rpcMetrics.method(RpcMetrics.CLIENT, rpcType, rpcName, command);
+        if (this.circuitBreaker != null) {
+            rpcMetrics.counter(RpcMetrics.CLIENT + ".circuit.breaker.rejected", this.circuitBreaker, RpcCircuitBreaker::getRejectedCount, "type", rpcType.getName(), "name", rpcName, "command", command);
+            rpcMetrics.counter(RpcMetrics.CLIENT + ".circuit.breaker.opened", this.circuitBreaker, RpcCircuitBreaker::getOpenCount, "type", rpcType.getName(), "name", rpcName, "command", command);
+        }
+        Parameter[] parameters = method.getParameters();
+        this.parameterNames = new String[parameters.length];
+        this.parameterKinds = new ParameterKind[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            Parameter parameter = parameters[i];
+            // Spring-Boot框架默认已加上-parameters编译参数
+            this.parameterNames[i] = parameter.getName();
+            if (isJavaBean(parameter.getType())) {
+                this.parameterKinds[i] = ParameterKind.JAVA_BEAN;
+            } else if (parameter.getType() == JSONObject.class) {
+                this.parameterKinds[i] = ParameterKind.JSON_OBJECT;
+            } else {
+                this.parameterKinds[i] = ParameterKind.NAMED;
+            }
+        }
+    }
+
+    String getCommand() {
+        return command;
+    }
+
+    ReturnKind getReturnKind() {
+        return returnKind;
+    }
+
+    /**
+     * 未开启缓存时返回 null
+     */
+    RpcResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * 未开启合并时返回 null
+     */
+    Map<String, CompletableFuture<RpcResult>> getInFlightMap() {
+        return inFlightMap;
+    }
+
+    /**
+     * 未开启熔断时返回 null
+     */
+    RpcCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    boolean isIdempotent() {
+        return idempotent;
+    }
+
+    boolean isHedged() {
+        return hedgeDelay != 0;
+    }
+
+    /**
+     * 对冲延迟, 按 p95 计算时样本不足返回 -1, 否则不小于 simple-rpc.client-hedge-min-delay, 避免亚毫秒级耗时的方法每次调用都立即对冲
+     */
+    long getHedgeDelay() {
+        if (latencyHistogram == null) {
+            return hedgeDelay;
+        }
+        long percentile = latencyHistogram.getPercentile();
+        return percentile < 0 ? -1 : Math.max(percentile, hedgeMinDelay);
+    }
+
+    /**
+     * 按 p95 计算对冲延迟时返回耗时直方图, 否则返回 null
+     */
+    RpcLatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    RpcMethodMetrics getMethodMetrics() {
+        return methodMetrics;
+    }
+
+    /**
+     * 是否需要调用 key
+     */
+    boolean isKeyed() {
+        return this.resultCache != null || this.inFlightMap != null;
+    }
+
+    /**
+     * 调用 key, 用于缓存及合并; command + 按 key 排序的 data, 与参数顺序及 JSONObject 内部顺序无关
+     */
+    String buildCallKey(JSONObject data) {
+        return this.command + ":" + JSON.toJSONString(data, SerializerFeature.MapSortField);
+    }
+
+    /**
+     * 组装data
+     */
+    JSONObject buildData(Object[] args) {
+        JSONObject data = new JSONObject();
+        for (int i = 0; i < this.parameterKinds.length; i++) {
+            switch (this.parameterKinds[i]) {
+                case JAVA_BEAN:
+                    return (JSONObject) JSON.toJSON(args[i]);
+                case JSON_OBJECT:
+                    data.putAll((JSONObject) args[i]);
+                    break;
+                default:
+                    data.put(this.parameterNames[i], args[i]);
+                    break;
+            }
+        }
+        return data;
+    }
+
+    private static boolean isJavaBean(Type type) {
+        if (null == type) {
+            throw new NullPointerException();
+        }
+        // 根据 getDeserializer 返回值类型判断是否为 java bean 类型
+        return ParserConfig.global.getDeserializer(type) instanceof JavaBeanDeserializer;
+    }
+
+    enum ReturnKind {
+        // ASYNC: void
+        VOID,
+        // SYNC: RpcResult, 阻塞等待回复
+        RESULT,
+        // SYNC: CompletableFuture<RpcResult>, 不阻塞调用线程
+        FUTURE,
+        // SYNC: Mono<RpcResult>, 订阅时调用, 取消订阅时移除在途记录
+        MONO,
+        // ASYNC: Mono<Void>, 订阅时发送
+        MONO_VOID
+    }
+
+    private enum ParameterKind {
+        // JavaBean 参数, 直接作为 data
+        JAVA_BEAN,
+        // JSONObject 参数, 合并到 data
+        JSON_OBJECT,
+        // 其他参数, 以参数名作为 key
+        NAMED
+    }
+
+}
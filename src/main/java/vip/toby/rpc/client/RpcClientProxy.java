@@ -1,26 +1,47 @@
 package vip.toby.rpc.client;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
-import com.alibaba.fastjson.parser.ParserConfig;
-import com.alibaba.fastjson.parser.deserializer.JavaBeanDeserializer;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.util.ClassUtils;
+import vip.toby.rpc.annotation.RpcClient;
 import vip.toby.rpc.annotation.RpcClientMethod;
+import vip.toby.rpc.cache.RpcCacheManager;
+import vip.toby.rpc.cache.RpcResultCache;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.codec.RpcCodecFactory;
+import vip.toby.rpc.compress.RpcCompressor;
+import vip.toby.rpc.compress.RpcCompressorFactory;
 import vip.toby.rpc.entity.*;
+import vip.toby.rpc.log.RpcAccessLogger;
+import vip.toby.rpc.metrics.RpcMethodMetrics;
+import vip.toby.rpc.metrics.RpcMetrics;
 import vip.toby.rpc.properties.RpcProperties;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * RpcClientProxy
@@ -31,25 +52,104 @@ public class RpcClientProxy<T> implements InvocationHandler {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(RpcClientProxy.class);
 
+    private final static boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono", RpcClientProxy.class.getClassLoader());
+
     private final Class<T> rpcClientInterface;
     private final String rpcName;
     private final RpcType rpcType;
     private final RabbitTemplate sender;
     private final RpcProperties rpcProperties;
+    private final RpcCodec rpcCodec;
+    private final RpcReplyDispatcher rpcReplyDispatcher;
+    private final int replyTimeout;
+    private final RpcBatchingSender rpcBatchingSender;
+    private final RpcCompressor rpcCompressor;
+    // 服务端已声明支持该压缩算法, 旧版本服务端无法解析压缩的请求
+    private volatile boolean requestCompressionAccepted;
+    private final RpcRetryPolicy rpcRetryPolicy;
+    private final RpcTokenBucket hedgeBudget;
+    private final RpcMetrics rpcMetrics;
+    private final RpcAccessLogger rpcAccessLogger;
+    private final RpcCacheManager rpcCacheManager;
+    private final Map<Method, RpcClientMethodMetadata> rpcClientMethodMap;
 
-    RpcClientProxy(Class<T> rpcClientInterface, String rpcName, RpcType rpcType, RabbitTemplate sender, RpcProperties rpcProperties) {
+    RpcClientProxy(Class<T> rpcClientInterface, String rpcName, RpcType rpcType, RabbitTemplate sender, RpcProperties rpcProperties, RpcCodec rpcCodec, RpcReplyDispatcher rpcReplyDispatcher, int replyTimeout, RpcBatchingSender rpcBatchingSender, RpcCompressor rpcCompressor, RpcMetrics rpcMetrics, RpcCircuitBreakerManager rpcCircuitBreakerManager, RpcCacheManager rpcCacheManager) {
         this.rpcClientInterface = rpcClientInterface;
         this.rpcName = rpcName;
         this.rpcType = rpcType;
         this.sender = sender;
         this.rpcProperties = rpcProperties;
+        this.rpcCodec = rpcCodec;
+        this.rpcReplyDispatcher = rpcReplyDispatcher;
+        this.replyTimeout = replyTimeout;
+        this.rpcBatchingSender = rpcBatchingSender;
+        this.rpcCompressor = rpcCompressor;
+        String requestCompression = rpcProperties.getClientRequestCompression();
+        if (!RpcCompressorFactory.NEGOTIATE.equals(requestCompression) && !RpcCompressorFactory.ALWAYS.equals(requestCompression)) {
+            throw new RuntimeException("simple-rpc.client-request-compression 只能为 negotiate 或 always");
+        }
+        this.requestCompressionAccepted = rpcCompressor != null && RpcCompressorFactory.ALWAYS.equals(rpcProperties.getClientRequestCompression());
+        this.rpcRetryPolicy = rpcType == RpcType.SYNC ? buildRpcRetryPolicy() : null;
+        this.hedgeBudget = rpcType == RpcType.SYNC ? new RpcTokenBucket(rpcProperties.getClientHedgeBudgetPercent()) : null;
+        this.rpcMetrics = rpcMetrics;
+        this.rpcAccessLogger = new RpcAccessLogger(RpcMetrics.CLIENT, rpcType, rpcName, rpcProperties.getClientSlowCallTime(), rpcProperties);
+        this.rpcCacheManager = rpcCacheManager;
+        this.rpcClientMethodMap = Collections.unmodifiableMap(buildRpcClientMethodMap(rpcCircuitBreakerManager));
+    }
+
+    private RpcRetryPolicy buildRpcRetryPolicy() {
+        RpcClient rpcClient = this.rpcClientInterface.getAnnotation(RpcClient.class);
+        int maxAttempts = rpcClient == null ? 1 : rpcClient.maxAttempts();
+        return new RpcRetryPolicy(this.rpcName, maxAttempts, this.rpcProperties.getClientRetryInitialInterval(), this.rpcProperties.getClientRetryMultiplier(), this.rpcProperties.getClientRetryMaxInterval(), this.rpcProperties.getClientRetryBudgetPercent());
+    }
+
+    /**
+     * 启动时解析所有方法, 声明错误的方法直接启动失败
+     */
+    private Map<Method, RpcClientMethodMetadata> buildRpcClientMethodMap(RpcCircuitBreakerManager rpcCircuitBreakerManager) {
+        Map<Method, RpcClientMethodMetadata> rpcClientMethodMap = new HashMap<>();
+        RpcClient rpcClient = this.rpcClientInterface.getAnnotation(RpcClient.class);
+        RpcCircuitBreakerManager circuitBreakerManager = rpcClient != null && rpcClient.circuitBreaker() && this.rpcType == RpcType.SYNC ? rpcCircuitBreakerManager : null;
+        for (Method method : this.rpcClientInterface.getMethods()) {
+            RpcClientMethod rpcClientMethod = method.getAnnotation(RpcClientMethod.class);
+            if (rpcClientMethod == null) {
+                continue;
+            }
+            Type returnType = method.getGenericReturnType();
+            RpcClientMethodMetadata.ReturnKind returnKind;
+            if (this.rpcType == RpcType.ASYNC) {
+                if (returnType == Void.TYPE) {
+                    returnKind = RpcClientMethodMetadata.ReturnKind.VOID;
+                } else if (REACTOR_PRESENT && RpcClientReactiveSupport.isMono(returnType, Void.class)) {
+                    returnKind = RpcClientMethodMetadata.ReturnKind.MONO_VOID;
+                } else {
+                    throw new RuntimeException("ASYNC-RpcClient 返回类型只能为 void 或 Mono<Void>, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+                }
+            } else if (returnType == RpcResult.class) {
+                returnKind = RpcClientMethodMetadata.ReturnKind.RESULT;
+            } else if (isGenericOf(returnType, CompletableFuture.class, RpcResult.class)) {
+                returnKind = RpcClientMethodMetadata.ReturnKind.FUTURE;
+            } else if (REACTOR_PRESENT && RpcClientReactiveSupport.isMono(returnType, RpcResult.class)) {
+                returnKind = RpcClientMethodMetadata.ReturnKind.MONO;
+            } else {
+                throw new RuntimeException("SYNC-RpcClient 返回类型只能为 RpcResult、CompletableFuture<RpcResult> 或 Mono<RpcResult>, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+            }
+            if ((rpcClientMethod.cacheTtl() > 0 || rpcClientMethod.coalesce() || rpcClientMethod.idempotent() || rpcClientMethod.hedgeDelay() != 0) && this.rpcType == RpcType.ASYNC) {
+                throw new RuntimeException("ASYNC-RpcClient 不支持缓存、合并调用、重试及对冲请求, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+            }
+            if (rpcClientMethod.hedgeDelay() != 0 && !rpcClientMethod.idempotent()) {
+                throw new RuntimeException("对冲请求只支持幂等方法, 需同时声明 idempotent = true, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+            }
+            rpcClientMethodMap.put(method, new RpcClientMethodMetadata(this.rpcName, method, rpcClientMethod, returnKind, this.rpcProperties, circuitBreakerManager, this.rpcCacheManager, this.rpcType, this.rpcMetrics));
+        }
+        return rpcClientMethodMap;
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) {
-        // 获取方法注解
-        RpcClientMethod rpcClientMethod = method.getAnnotation(RpcClientMethod.class);
-        if (rpcClientMethod == null) {
+        // 获取方法元数据
+        RpcClientMethodMetadata rpcClientMethodMetadata = this.rpcClientMethodMap.get(method);
+        if (rpcClientMethodMetadata == null) {
             try {
                 if (Object.class.equals(method.getDeclaringClass())) {
                     return method.invoke(this, args);
@@ -59,94 +159,594 @@ public class RpcClientProxy<T> implements InvocationHandler {
                 throw new RuntimeException(t);
             }
         }
-        if (this.rpcType == RpcType.ASYNC && method.getGenericReturnType() != Void.TYPE) {
-            throw new RuntimeException("ASYNC-RpcClient 返回类型只能为 void, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
-        }
-        if (this.rpcType == RpcType.SYNC && method.getGenericReturnType() != RpcResult.class) {
-            throw new RuntimeException("SYNC-RpcClient 返回类型只能为 RpcResult, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
-        }
-        String methodName = rpcClientMethod.value();
-        if (StringUtils.isBlank(methodName)) {
-            methodName = method.getName();
-        }
+        String methodName = rpcClientMethodMetadata.getCommand();
         // 组装data
-        JSONObject data = new JSONObject();
-        Parameter[] parameters = method.getParameters();
-        for (int i = 0; i < parameters.length; i++) {
-            Parameter parameter = parameters[i];
-            if (isJavaBean(parameter.getType())) {
-                data = (JSONObject) JSON.toJSON(args[i]);
-                break;
-            } else if (parameter.getType() == JSONObject.class) {
-                data.putAll((JSONObject) args[i]);
-            } else {
-                // Spring-Boot框架默认已加上-parameters编译参数
-                data.put(parameters[i].getName(), args[i]);
-            }
-        }
+        JSONObject data = rpcClientMethodMetadata.buildData(args);
         // 调用参数
         JSONObject paramData = new JSONObject();
         paramData.put("command", methodName);
         paramData.put("data", data);
-        String paramDataJsonString = paramData.toJSONString();
+        RpcResultCache resultCache = rpcClientMethodMetadata.getResultCache();
+        String callKey = rpcClientMethodMetadata.isKeyed() ? rpcClientMethodMetadata.buildCallKey(data) : null;
+        switch (rpcClientMethodMetadata.getReturnKind()) {
+            case MONO_VOID:
+                return RpcClientReactiveSupport.monoVoid(() -> send(methodName, paramData, rpcClientMethodMetadata));
+            case MONO:
+                return RpcClientReactiveSupport.mono(() -> sendAndReceiveAsync(methodName, paramData, rpcClientMethodMetadata, callKey));
+            case FUTURE:
+                return sendAndReceiveAsync(methodName, paramData, rpcClientMethodMetadata, callKey);
+            case VOID:
+                try {
+                    send(methodName, paramData, rpcClientMethodMetadata);
+                    return null;
+                } catch (Exception e) {
+                    LOGGER.error(e.getMessage(), e);
+                    throw new RuntimeException(e);
+                }
+            default:
+                if (resultCache != null) {
+                    RpcResult rpcResult = resultCache.get(callKey);
+                    if (rpcResult != null) {
+                        return rpcResult;
+                    }
+                }
+                try {
+                    if (rpcClientMethodMetadata.getInFlightMap() != null) {
+                        return coalesce(methodName, paramData, rpcClientMethodMetadata, callKey).get();
+                    }
+                    RpcMethodMetrics methodMetrics = rpcClientMethodMetadata.getMethodMetrics();
+                    long metricsStart = methodMetrics.start();
+                    RpcCircuitBreaker circuitBreaker = rpcClientMethodMetadata.getCircuitBreaker();
+                    RpcCircuitBreaker.Phase permit = circuitBreaker == null ? null : circuitBreaker.tryAcquire();
+                    if (circuitBreaker != null && permit == null) {
+                        RpcResult rpcResult = reject(methodName);
+                        record(methodMetrics, metricsStart, rpcResult, null);
+                        return rpcResult;
+                    }
+                    // 发起请求并返回结果
+                    long start = System.currentTimeMillis();
+                    RpcResult rpcResult;
+                    try {
+                        byte[] body = this.rpcCodec.encode(paramData);
+                        methodMetrics.requestSize(body.length);
+                        Message replyMessage = sendAndReceive(methodName, body, rpcClientMethodMetadata).get();
+                        if (replyMessage != null) {
+                            methodMetrics.responseSize(replyMessage.getBody().length);
+                        }
+                        rpcResult = toRpcResult(replyMessage, methodName, body, start);
+                    } catch (Exception e) {
+                        record(circuitBreaker, permit, null, e);
+                        record(methodMetrics, metricsStart, null, e);
+                        throw e;
+                    }
+                    record(circuitBreaker, permit, rpcResult, null);
+                    record(methodMetrics, metricsStart, rpcResult, null);
+                    if (resultCache != null) {
+                        resultCache.put(callKey, rpcResult);
+                    }
+                    return rpcResult;
+                } catch (Exception e) {
+                    LOGGER.error(e.getMessage(), e);
+                    throw new RuntimeException(e);
+                }
+        }
+    }
+
+    /**
+     * 使缓存的调用结果失效, 只记录调用不发送
+     */
+    void invalidateCache(Method method, Object[] args) {
+        RpcClientMethodMetadata rpcClientMethodMetadata = this.rpcClientMethodMap.get(method);
+        if (rpcClientMethodMetadata == null || rpcClientMethodMetadata.getResultCache() == null) {
+            throw new RuntimeException("未开启缓存, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+        }
+        rpcClientMethodMetadata.getResultCache().invalidate(rpcClientMethodMetadata.buildCallKey(rpcClientMethodMetadata.buildData(args)));
+    }
+
+    /**
+     * 获取该 RpcClient 指定方法的缓存, 未开启缓存返回 null
+     */
+    RpcResultCache getResultCache(String command) {
+        return this.rpcCacheManager == null ? null : this.rpcCacheManager.getCache(this.rpcName + "." + command);
+    }
+
+    /**
+     * 清空该 RpcClient 所有方法的缓存
+     */
+    void invalidateAllCache() {
+        for (RpcClientMethodMetadata rpcClientMethodMetadata : this.rpcClientMethodMap.values()) {
+            if (rpcClientMethodMetadata.getResultCache() != null) {
+                rpcClientMethodMetadata.getResultCache().invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * SYNC 批量调用, 所有调用合并为一条消息, 按顺序返回每个调用的结果
+     */
+    List<RpcResult> invokeBatch(List<Method> methods, List<Object[]> argsList) {
+        List<String> methodNames = new ArrayList<>(methods.size());
+        byte[] body = buildBatchBody(methods, argsList, methodNames);
+        try {
+            long start = System.currentTimeMillis();
+            return toRpcResults(sendAndReceive(buildBatchMessage(body)), methodNames, start);
+        } catch (Exception e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * SYNC 非阻塞批量调用
+     */
+    CompletableFuture<List<RpcResult>> invokeBatchAsync(List<Method> methods, List<Object[]> argsList) {
+        List<String> methodNames = new ArrayList<>(methods.size());
+        byte[] body = buildBatchBody(methods, argsList, methodNames);
+        long start = System.currentTimeMillis();
+        return this.rpcReplyDispatcher.sendAndReceive(this.sender, buildBatchMessage(body), this.replyTimeout).thenApply(replyMessage -> toRpcResults(replyMessage, methodNames, start));
+    }
+
+    /**
+     * 组装批量调用报文
+     */
+    private byte[] buildBatchBody(List<Method> methods, List<Object[]> argsList, List<String> methodNames) {
+        if (this.rpcType != RpcType.SYNC) {
+            throw new RuntimeException("批量调用只支持 SYNC-RpcClient, " + this);
+        }
+        JSONArray entries = new JSONArray(methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            RpcClientMethodMetadata rpcClientMethodMetadata = this.rpcClientMethodMap.get(methods.get(i));
+            if (rpcClientMethodMetadata == null) {
+                throw new RuntimeException("未加@RpcClientMethod, Class: " + this.rpcClientInterface.getName() + ", Method: " + methods.get(i).getName());
+            }
+            JSONObject paramData = new JSONObject();
+            paramData.put("command", rpcClientMethodMetadata.getCommand());
+            paramData.put("data", rpcClientMethodMetadata.buildData(argsList.get(i)));
+            entries.add(paramData);
+            methodNames.add(rpcClientMethodMetadata.getCommand());
+        }
+        return this.rpcCodec.encode(entries);
+    }
+
+    /**
+     * 解析批量调用的回复消息, 整体失败时每个调用返回相同状态
+     */
+    private List<RpcResult> toRpcResults(Message replyMessage, List<String> methodNames, long start) {
+        List<RpcResult> rpcResults = new ArrayList<>(methodNames.size());
+        JSONObject resultJson = replyMessage == null ? null : decodeReply(replyMessage);
+        JSONArray replies = resultJson == null ? null : resultJson.getJSONArray("data");
+        if (replies == null || replies.size() != methodNames.size()) {
+            ServerStatus serverStatus = resultJson == null ? ServerStatus.UNAVAILABLE : ServerStatus.getServerStatus(resultJson.getIntValue("status"));
+            if (serverStatus == ServerStatus.SUCCESS) {
+                serverStatus = ServerStatus.FAILURE;
+            }
+            LOGGER.error(serverStatus.getMessage() + "! Duration: " + (System.currentTimeMillis() - start) + "ms, " + this.rpcType.getName() + "-RpcClient-" + this.rpcName + ", Batch: " + methodNames);
+            for (int i = 0; i < methodNames.size(); i++) {
+                rpcResults.add(new RpcResult(serverStatus));
+            }
+            return rpcResults;
+        }
+        for (int i = 0; i < methodNames.size(); i++) {
+            // 单个调用的报文不再单独编码, 只记录状态和耗时
+            rpcResults.add(toRpcResult(replies.getJSONObject(i), methodNames.get(i), null, null, start));
+        }
+        return rpcResults;
+    }
+
+    /**
+     * 构建请求消息, 每次发送使用新的 correlationId
+     */
+    private Message buildMessage(String methodName, byte[] body) {
+        Message message = buildMessage(body);
+        message.getMessageProperties().setHeader(RpcProtocol.COMMAND_HEADER, methodName);
+        return message;
+    }
+
+    private Message buildBatchMessage(byte[] body) {
+        Message message = buildMessage(body);
+        message.getMessageProperties().setHeader(RpcProtocol.BATCH_HEADER, true);
+        return message;
+    }
+
+    private Message buildMessage(byte[] body) {
         // MessageProperties
         MessageProperties messageProperties = new MessageProperties();
-        messageProperties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+        messageProperties.setContentType(this.rpcCodec.getContentType());
         messageProperties.setCorrelationId(UUID.randomUUID().toString());
+        if (this.rpcType == RpcType.SYNC) {
+            // 告知服务端可以压缩返回报文
+            messageProperties.setHeader(RpcProtocol.ACCEPT_COMPRESSION_HEADER, RpcCompressorFactory.getAcceptCompression());
+        }
+        if (this.requestCompressionAccepted) {
+            body = RpcCompressorFactory.compress(this.rpcCompressor, this.rpcProperties.getCompressionThreshold(), messageProperties.getHeaders(), body);
+        }
         // Message
-        Message message = new Message(paramDataJsonString.getBytes(StandardCharsets.UTF_8), messageProperties);
-        // CorrelationData
-        CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
+        return new Message(body, messageProperties);
+    }
+
+    /**
+     * SYNC 阻塞调用, 超时返回 null
+     */
+    private Message sendAndReceive(Message message) throws InterruptedException, ExecutionException {
+        return this.rpcReplyDispatcher.sendAndReceive(this.sender, message, this.replyTimeout).get();
+    }
+
+    /**
+     * SYNC 调用, 幂等方法在发送失败或超时时退避重试, 每次重试使用新的 correlationId; 超时返回 null
+     */
+    private CompletableFuture<Message> sendAndReceive(String methodName, byte[] body, RpcClientMethodMetadata rpcClientMethodMetadata) {
+        if (!rpcClientMethodMetadata.isIdempotent()) {
+            return this.rpcReplyDispatcher.sendAndReceive(this.sender, buildMessage(methodName, body), this.replyTimeout);
+        }
+        this.rpcRetryPolicy.deposit();
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        attempt(methodName, body, rpcClientMethodMetadata, 1, future);
+        return future;
+    }
+
+    private void attempt(String methodName, byte[] body, RpcClientMethodMetadata rpcClientMethodMetadata, int attempts, CompletableFuture<Message> future) {
+        // 退避期间已被取消
+        if (future.isDone()) {
+            return;
+        }
+        CompletableFuture<Message> replyFuture;
         try {
-            if (this.rpcType == RpcType.ASYNC) {
-                this.sender.correlationConvertAndSend(message, correlationData);
-                LOGGER.debug(this.rpcType.getName() + "-RpcClient-" + this.rpcName + ", Method: " + methodName + ", Param: " + paramDataJsonString);
-                return null;
+            replyFuture = rpcClientMethodMetadata.isHedged() ? hedge(methodName, body, rpcClientMethodMetadata) : this.rpcReplyDispatcher.sendAndReceive(this.sender, buildMessage(methodName, body), this.replyTimeout);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            return;
+        }
+        future.whenComplete((replyMessage, throwable) -> {
+            if (future.isCancelled()) {
+                replyFuture.cancel(false);
             }
-            // 发起请求并返回结果
-            long start = System.currentTimeMillis();
-            Object resultObj = this.sender.convertSendAndReceive(message, correlationData);
-            if (resultObj == null) {
-                // 无返回任何结果，说明服务器负载过高，没有及时处理请求，导致超时
-                LOGGER.error("Service Unavailable! Duration: " + (System.currentTimeMillis() - start) + "ms, " + this.rpcType.getName() + "-RpcClient-" + this.rpcName + ", Method: " + methodName + ", Param: " + paramDataJsonString);
-                return new RpcResult(ServerStatus.UNAVAILABLE);
-            }
-            // 获取调用结果的状态
-            JSONObject resultJson = JSONObject.parseObject(resultObj.toString());
-            int status = resultJson.getIntValue("status");
-            Object resultData = resultJson.get("data");
-            ServerStatus serverStatus = ServerStatus.getServerStatus(status);
-            if (serverStatus != ServerStatus.SUCCESS || resultData == null) {
-                LOGGER.error(serverStatus.getMessage() + "! Duration: " + (System.currentTimeMillis() - start) + "ms, " + this.rpcType.getName() + "-RpcClient-" + this.rpcName + ", Method: " + methodName + ", Param: " + paramDataJsonString);
-                return new RpcResult(ServerStatus.getServerStatus(status));
-            }
-            // 获取操作层的状态
-            JSONObject serverResultJson = JSON.parseObject(resultData.toString());
-            RpcResult rpcResult = new RpcResult(ServerResult.build(OperateStatus.getOperateStatus(serverResultJson.getIntValue("status"))).message(serverResultJson.getString("message")).result(serverResultJson.get("result")).errorCode(serverResultJson.getIntValue("errorCode")));
-            long offset = System.currentTimeMillis() - start;
-            if (offset > this.rpcProperties.getClientSlowCallTime()) {
-                LOGGER.warn("Call Slowing! Duration: " + offset + "ms, " + this.rpcType.getName() + "-RpcClient-" + this.rpcName + ", Method: " + methodName + ", Param: " + paramDataJsonString + ", RpcResult: " + rpcResult);
+        });
+        replyFuture.whenComplete((replyMessage, throwable) -> {
+            if ((throwable != null || replyMessage == null) && !(throwable instanceof CancellationException) && this.rpcRetryPolicy.tryRetry(attempts)) {
+                long backoff = this.rpcRetryPolicy.backoff(attempts);
+                LOGGER.warn((throwable == null ? "Service Unavailable" : throwable.getMessage()) + "! Retry " + attempts + "/" + (this.rpcRetryPolicy.getMaxAttempts() - 1) + " After " + backoff + "ms, " + this.rpcType.getName() + "-RpcClient-" + this.rpcName + ", Method: " + methodName);
+                // 发送可能阻塞, 不在定时器线程执行
+                RpcTimer.getInstance().newTimeout(() -> {
+                    try {
+                        this.rpcReplyDispatcher.sendLater(() -> attempt(methodName, body, rpcClientMethodMetadata, attempts + 1, future));
+                    } catch (RejectedExecutionException e) {
+                        future.completeExceptionally(e);
+                    }
+                }, backoff, TimeUnit.MILLISECONDS);
+            } else if (throwable != null) {
+                future.completeExceptionally(throwable);
             } else {
-                LOGGER.debug("Duration: " + offset + "ms, " + this.rpcType.getName() + "-RpcClient-" + this.rpcName + ", Method: " + methodName + ", Param: " + paramDataJsonString + ", RpcResult: " + rpcResult);
+                future.complete(replyMessage);
             }
-            return rpcResult;
-        } catch (Exception e) {
-            LOGGER.error(e.getMessage(), e);
-            throw new RuntimeException(e);
+        });
+    }
+
+    /**
+     * 对冲调用, 超过对冲延迟未回复时以相同幂等键再发送一份, 取先到的回复, 另一份的回复被丢弃; 两份都失败或超时才返回失败
+     */
+    private CompletableFuture<Message> hedge(String methodName, byte[] body, RpcClientMethodMetadata rpcClientMethodMetadata) {
+        long start = System.currentTimeMillis();
+        Message message = buildMessage(methodName, body);
+        String idempotencyKey = message.getMessageProperties().getCorrelationId();
+        message.getMessageProperties().setHeader(RpcProtocol.IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        CompletableFuture<Message> primary = this.rpcReplyDispatcher.sendAndReceive(this.sender, message, this.replyTimeout);
+        RpcLatencyHistogram latencyHistogram = rpcClientMethodMetadata.getLatencyHistogram();
+        long hedgeDelay = rpcClientMethodMetadata.getHedgeDelay();
+        this.hedgeBudget.deposit();
+        if (hedgeDelay < 0 || hedgeDelay >= this.replyTimeout) {
+            // 样本不足或对冲延迟不小于超时时间, 不对冲
+            if (latencyHistogram != null) {
+                primary.whenComplete((replyMessage, throwable) -> record(latencyHistogram, replyMessage, start));
+            }
+            return primary;
         }
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        race(primary, future, outstanding);
+        RpcTimer.Timeout timeout = RpcTimer.getInstance().newTimeout(() -> {
+            if (future.isDone() || !this.hedgeBudget.tryAcquire()) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            // 发送可能阻塞, 不在定时器线程执行
+            try {
+                this.rpcReplyDispatcher.sendLater(() -> {
+                    CompletableFuture<Message> hedgeFuture;
+                    try {
+                        Message hedgeMessage = buildMessage(methodName, body);
+                        hedgeMessage.getMessageProperties().setHeader(RpcProtocol.IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+                        // 剩余的超时时间, 与原请求同时超时
+                        hedgeFuture = this.rpcReplyDispatcher.sendAndReceive(this.sender, hedgeMessage, Math.max(1, this.replyTimeout - (System.currentTimeMillis() - start)));
+                        if (LOGGER.isDebugEnabled()) {
+                            LOGGER.debug("Hedged After " + hedgeDelay + "ms, " + this.rpcType.getName() + "-RpcClient-" + this.rpcName + ", Method: " + methodName);
+                        }
+                    } catch (Exception e) {
+                        hedgeFuture = new CompletableFuture<>();
+                        hedgeFuture.completeExceptionally(e);
+                    }
+                    race(hedgeFuture, future, outstanding);
+                });
+            } catch (RejectedExecutionException e) {
+                // 发送线程池已满, 放弃对冲, 结果取决于原请求
+                CompletableFuture<Message> hedgeFuture = new CompletableFuture<>();
+                hedgeFuture.completeExceptionally(e);
+                race(hedgeFuture, future, outstanding);
+            }
+        }, hedgeDelay, TimeUnit.MILLISECONDS);
+        future.whenComplete((replyMessage, throwable) -> {
+            timeout.cancel();
+            record(latencyHistogram, replyMessage, start);
+        });
+        return future;
     }
 
-    @Override
-    public String toString() {
-        return this.rpcType.getName() + "-RpcClient-" + this.rpcName;
+    /**
+     * 任一份成功回复即完成, 全部失败或超时时以最后一份的结果完成; 完成后取消其余在途的请求
+     */
+    private static void race(CompletableFuture<Message> copy, CompletableFuture<Message> future, AtomicInteger outstanding) {
+        future.whenComplete((replyMessage, throwable) -> copy.cancel(false));
+        copy.whenComplete((replyMessage, throwable) -> {
+            if (throwable == null && replyMessage != null) {
+                future.complete(replyMessage);
+            } else if (outstanding.decrementAndGet() == 0) {
+                if (throwable != null) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    future.complete(null);
+                }
+            }
+        });
+    }
+
+    private static void record(RpcLatencyHistogram latencyHistogram, Message replyMessage, long start) {
+        if (latencyHistogram != null && replyMessage != null) {
+            latencyHistogram.record(System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * ASYNC 发送, 开启批量发送时加入批次, 所在批次实际发送后才记录结果
+     */
+    private void send(String methodName, JSONObject paramData, RpcClientMethodMetadata rpcClientMethodMetadata) {
+        RpcMethodMetrics methodMetrics = rpcClientMethodMetadata.getMethodMetrics();
+        long start = methodMetrics.start();
+        byte[] body;
+        try {
+            body = this.rpcCodec.encode(paramData);
+            methodMetrics.requestSize(body.length);
+        } catch (RuntimeException e) {
+            methodMetrics.stop(start, ServerStatus.FAILURE, null);
+            throw e;
+        }
+        if (this.rpcBatchingSender != null) {
+            // 发送失败时由回调记录, 批次由当前调用发送时异常仍抛给当前调用方
+            this.rpcBatchingSender.send(body, throwable -> record(methodName, methodMetrics, start, body, throwable));
+            return;
+        }
+        try {
+            this.sender.correlationConvertAndSend(buildMessage(methodName, body), new CorrelationData(UUID.randomUUID().toString()));
+        } catch (RuntimeException e) {
+            record(methodName, methodMetrics, start, body, e);
+            throw e;
+        }
+        record(methodName, methodMetrics, start, body, null);
+    }
+
+    /**
+     * 记录 ASYNC 发送结果, 发送失败记为调用失败
+     */
+    private void record(String methodName, RpcMethodMetrics methodMetrics, long start, byte[] body, Throwable throwable) {
+        ServerStatus serverStatus = throwable == null ? ServerStatus.SUCCESS : ServerStatus.FAILURE;
+        methodMetrics.stop(start, serverStatus, null);
+        this.rpcAccessLogger.log(methodName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), serverStatus, null, this.rpcCodec, body, null);
+    }
+
+    /**
+     * SYNC 非阻塞调用, 由回复消息或超时完成; 取消返回的 Future 会移除在途记录
+     */
+    private CompletableFuture<RpcResult> sendAndReceiveAsync(String methodName, JSONObject paramData, RpcClientMethodMetadata rpcClientMethodMetadata, String callKey) {
+        RpcResultCache resultCache = rpcClientMethodMetadata.getResultCache();
+        if (resultCache != null) {
+            RpcResult rpcResult = resultCache.get(callKey);
+            if (rpcResult != null) {
+                return CompletableFuture.completedFuture(rpcResult);
+            }
+        }
+        if (rpcClientMethodMetadata.getInFlightMap() != null) {
+            return coalesce(methodName, paramData, rpcClientMethodMetadata, callKey);
+        }
+        return doSendAndReceiveAsync(methodName, paramData, rpcClientMethodMetadata, callKey);
+    }
+
+    /**
+     * 合并相同调用, 首个调用发送请求, 在途期间的相同调用共享其结果
+     * <p>
+     * 每个调用方获得独立的 Future, 取消只影响自己, 不会取消共享的在途调用
+     */
+    private CompletableFuture<RpcResult> coalesce(String methodName, JSONObject paramData, RpcClientMethodMetadata rpcClientMethodMetadata, String callKey) {
+        Map<String, CompletableFuture<RpcResult>> inFlightMap = rpcClientMethodMetadata.getInFlightMap();
+        CompletableFuture<RpcResult> future = new CompletableFuture<>();
+        CompletableFuture<RpcResult> inFlight = inFlightMap.putIfAbsent(callKey, future);
+        if (inFlight == null) {
+            inFlight = future;
+            future.whenComplete((rpcResult, throwable) -> inFlightMap.remove(callKey, future));
+            doSendAndReceiveAsync(methodName, paramData, rpcClientMethodMetadata, callKey).whenComplete((rpcResult, throwable) -> {
+                if (throwable != null) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    future.complete(rpcResult);
+                }
+            });
+        } else if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(this.rpcType.getName() + "-RpcClient-" + this.rpcName + ", Method: " + methodName + " Coalesced");
+        }
+        return inFlight.thenApply(Function.identity());
+    }
+
+    private CompletableFuture<RpcResult> doSendAndReceiveAsync(String methodName, JSONObject paramData, RpcClientMethodMetadata rpcClientMethodMetadata, String callKey) {
+        RpcResultCache resultCache = rpcClientMethodMetadata.getResultCache();
+        RpcCircuitBreaker circuitBreaker = rpcClientMethodMetadata.getCircuitBreaker();
+        RpcMethodMetrics methodMetrics = rpcClientMethodMetadata.getMethodMetrics();
+        long metricsStart = methodMetrics.start();
+        RpcCircuitBreaker.Phase permit = circuitBreaker == null ? null : circuitBreaker.tryAcquire();
+        if (circuitBreaker != null && permit == null) {
+            RpcResult rpcResult = reject(methodName);
+            record(methodMetrics, metricsStart, rpcResult, null);
+            return CompletableFuture.completedFuture(rpcResult);
+        }
+        long start = System.currentTimeMillis();
+        byte[] body = this.rpcCodec.encode(paramData);
+        methodMetrics.requestSize(body.length);
+        CompletableFuture<Message> replyFuture = sendAndReceive(methodName, body, rpcClientMethodMetadata);
+        CompletableFuture<RpcResult> resultFuture = new CompletableFuture<>();
+        replyFuture.whenComplete((replyMessage, throwable) -> {
+            if (replyMessage != null) {
+                methodMetrics.responseSize(replyMessage.getBody().length);
+            }
+            if (throwable != null) {
+                resultFuture.completeExceptionally(throwable);
+                return;
+            }
+            try {
+                RpcResult rpcResult = toRpcResult(replyMessage, methodName, body, start);
+                if (resultCache != null) {
+                    resultCache.put(callKey, rpcResult);
+                }
+                resultFuture.complete(rpcResult);
+            } catch (Exception e) {
+                resultFuture.completeExceptionally(e);
+            }
+        });
+        resultFuture.whenComplete((rpcResult, throwable) -> {
+            if (resultFuture.isCancelled()) {
+                replyFuture.cancel(false);
+            }
+            record(circuitBreaker, permit, rpcResult, throwable);
+            record(methodMetrics, metricsStart, rpcResult, throwable);
+        });
+        return resultFuture;
+    }
+
+    /**
+     * 熔断打开, 不发送直接返回 Service Unavailable; 状态变化已由熔断器记录, 这里只记录访问日志
+     */
+    private RpcResult reject(String methodName) {
+        this.rpcAccessLogger.log(methodName, 0, ServerStatus.UNAVAILABLE, null, this.rpcCodec, null, null);
+        return new RpcResult(ServerStatus.UNAVAILABLE);
     }
 
-    private static boolean isJavaBean(Type type) {
-        if (null == type) {
-            throw new NullPointerException();
+    /**
+     * 按放行时的 Phase 记录熔断统计, 超时、调用失败及异常计为失败, 取消不计入
+     */
+    private static void record(RpcCircuitBreaker circuitBreaker, RpcCircuitBreaker.Phase permit, RpcResult rpcResult, Throwable throwable) {
+        if (circuitBreaker == null) {
+            return;
         }
-        // 根据 getDeserializer 返回值类型判断是否为 java bean 类型
-        return ParserConfig.global.getDeserializer(type) instanceof JavaBeanDeserializer;
+        if (throwable instanceof CancellationException || throwable instanceof InterruptedException) {
+            circuitBreaker.onIgnored(permit);
+        } else if (throwable != null || rpcResult.getServerStatus() == ServerStatus.UNAVAILABLE || rpcResult.getServerStatus() == ServerStatus.FAILURE) {
+            circuitBreaker.onFailure(permit);
+        } else {
+            circuitBreaker.onSuccess(permit);
+        }
+    }
+
+    /**
+     * 记录调用指标, 异常计为调用失败
+     */
+    private static void record(RpcMethodMetrics methodMetrics, long start, RpcResult rpcResult, Throwable throwable) {
+        if (throwable != null) {
+            methodMetrics.stop(start, ServerStatus.FAILURE, null);
+            return;
+        }
+        ServerResult serverResult = rpcResult.getServerResult();
+        methodMetrics.stop(start, rpcResult.getServerStatus(), serverResult == null ? null : serverResult.getOperateStatus());
+    }
+
+    /**
+     * 解析回复消息, 为 null 说明调用超时
+     */
+    private RpcResult toRpcResult(Message replyMessage, String methodName, byte[] body, long start) {
+        if (replyMessage == null) {
+            // 无返回任何结果，说明服务器负载过高，没有及时处理请求，导致超时
+            this.rpcAccessLogger.log(methodName, System.currentTimeMillis() - start, ServerStatus.UNAVAILABLE, null, this.rpcCodec, body, null);
+            return new RpcResult(ServerStatus.UNAVAILABLE);
+        }
+        MessageProperties messageProperties = replyMessage.getMessageProperties();
+        acceptCompression(messageProperties);
+        byte[] replyBody = RpcCompressorFactory.decompress(messageProperties.getHeaders(), replyMessage.getBody(), this.rpcProperties.getCompressionMaxSize());
+        RpcCodec replyCodec = RpcCodecFactory.getCodecByContentType(messageProperties.getContentType(), this.rpcCodec);
+        return toRpcResult(replyCodec.decode(replyBody, JSONObject.class), methodName, body, replyBody, start);
+    }
+
+    private JSONObject decodeReply(Message replyMessage) {
+        MessageProperties messageProperties = replyMessage.getMessageProperties();
+        acceptCompression(messageProperties);
+        byte[] body = RpcCompressorFactory.decompress(messageProperties.getHeaders(), replyMessage.getBody(), this.rpcProperties.getCompressionMaxSize());
+        return RpcCodecFactory.getCodecByContentType(messageProperties.getContentType(), this.rpcCodec).decode(body, JSONObject.class);
+    }
+
+    /**
+     * 回复声明支持本端的压缩算法时, 之后的请求开始压缩
+     */
+    private void acceptCompression(MessageProperties messageProperties) {
+        if (!this.requestCompressionAccepted && this.rpcCompressor != null && RpcCompressorFactory.isAccepted(messageProperties.getHeaders(), this.rpcCompressor)) {
+            this.requestCompressionAccepted = true;
+        }
+    }
+
+    /**
+     * 解析返回报文, body、replyBody 仅用于访问日志, 可为 null
+     */
+    private RpcResult toRpcResult(JSONObject resultJson, String methodName, byte[] body, byte[] replyBody, long start) {
+        // 获取调用结果的状态
+        int status = resultJson.getIntValue("status");
+        Object resultData = resultJson.get("data");
+        ServerStatus serverStatus = ServerStatus.getServerStatus(status);
+        if (serverStatus != ServerStatus.SUCCESS || resultData == null) {
+            this.rpcAccessLogger.log(methodName, System.currentTimeMillis() - start, serverStatus, null, this.rpcCodec, body, replyBody);
+            return new RpcResult(ServerStatus.getServerStatus(status));
+        }
+        // 获取操作层的状态, 旧版本服务端的 data 为 JSON 字符串, 需要二次解析
+        JSONObject serverResultJson = resultJson.getIntValue("version") >= RpcProtocol.REPLY_VERSION ? (JSONObject) resultData : JSON.parseObject(resultData.toString());
+        RpcResult rpcResult = new RpcResult(ServerResult.parse(serverResultJson));
+        this.rpcAccessLogger.log(methodName, System.currentTimeMillis() - start, ServerStatus.SUCCESS, rpcResult.getServerResult().getOperateStatus(), this.rpcCodec, body, replyBody);
+        return rpcResult;
+    }
+
+    /**
+     * 判断是否为 rawType&lt;argumentType&gt;
+     */
+    static boolean isGenericOf(Type type, Class<?> rawType, Type argumentType) {
+        if (!(type instanceof ParameterizedType)) {
+            return false;
+        }
+        ParameterizedType parameterizedType = (ParameterizedType) type;
+        return parameterizedType.getRawType() == rawType && parameterizedType.getActualTypeArguments()[0] == argumentType;
+    }
+
+    /**
+     * 获取 RpcClient 代理对象的 RpcClientProxy
+     */
+    @SuppressWarnings("unchecked")
+    static <T> RpcClientProxy<T> of(T rpcClient) {
+        if (rpcClient == null || !Proxy.isProxyClass(rpcClient.getClass())) {
+            throw new RuntimeException("只支持 RpcClient 代理对象");
+        }
+        InvocationHandler invocationHandler = Proxy.getInvocationHandler(rpcClient);
+        if (!(invocationHandler instanceof RpcClientProxy)) {
+            throw new RuntimeException("只支持 RpcClient 代理对象");
+        }
+        return (RpcClientProxy<T>) invocationHandler;
+    }
+
+    Class<T> getRpcClientInterface() {
+        return this.rpcClientInterface;
+    }
+
+    @Override
+    public String toString() {
+        return this.rpcType.getName() + "-RpcClient-" + this.rpcName;
     }
 
 }
@@ -1,10 +1,12 @@
 package vip.toby.rpc.client;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.DirectReplyToMessageListenerContainer;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
@@ -13,10 +15,14 @@ import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
-import org.springframework.retry.policy.SimpleRetryPolicy;
-import org.springframework.retry.support.RetryTemplate;
 import vip.toby.rpc.annotation.RpcClient;
+import vip.toby.rpc.cache.RpcCacheManager;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.codec.RpcCodecFactory;
+import vip.toby.rpc.compress.RpcCompressor;
+import vip.toby.rpc.compress.RpcCompressorFactory;
 import vip.toby.rpc.entity.RpcType;
+import vip.toby.rpc.metrics.RpcMetricsFactory;
 import vip.toby.rpc.properties.RpcProperties;
 
 import java.lang.reflect.Proxy;
@@ -34,7 +40,10 @@ public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAwar
     private final Class<T> rpcClientInterface;
     private ConnectionFactory connectionFactory;
     private DirectExchange syncReplyDirectExchange;
+    private RpcReplyDispatcher rpcReplyDispatcher;
     private RpcProperties rpcProperties;
+    private RpcCircuitBreakerManager rpcCircuitBreakerManager;
+    private RpcCacheManager rpcCacheManager;
 
     public RpcClientProxyFactory(Class<T> rpcClientInterface) {
         this.rpcClientInterface = rpcClientInterface;
@@ -49,21 +58,24 @@ public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAwar
     @Override
     public T getObject() {
         RabbitTemplate sender;
+        RpcReplyDispatcher rpcReplyDispatcher = null;
+        RpcBatchingSender rpcBatchingSender = null;
         RpcClient rpcClient = this.rpcClientInterface.getAnnotation(RpcClient.class);
         String rpcName = rpcClient.value();
         RpcType rpcType = rpcClient.type();
         int replyTimeout = rpcClient.replyTimeout();
-        int maxAttempts = rpcClient.maxAttempts();
+        RpcCodec rpcCodec = RpcCodecFactory.getCodec(StringUtils.isBlank(rpcClient.codec()) ? getRpcProperties().getCodec() : rpcClient.codec());
+        RpcCompressor rpcCompressor = RpcCompressorFactory.getCompressor(StringUtils.isBlank(rpcClient.compression()) ? getRpcProperties().getCompression() : rpcClient.compression());
         if (rpcType == RpcType.SYNC) {
-            Queue replyQueue = replyQueue(rpcName, UUID.randomUUID().toString());
-            replyBinding(rpcName, replyQueue);
-            RabbitTemplate syncSender = syncSender(rpcName, replyQueue, replyTimeout, maxAttempts, getConnectionFactory());
-            replyMessageListenerContainer(rpcName, replyQueue, syncSender, getConnectionFactory());
-            sender = syncSender;
+            sender = syncSender(rpcName, getConnectionFactory());
+            rpcReplyDispatcher = getRpcReplyDispatcher();
         } else {
             sender = asyncSender(rpcName, getConnectionFactory());
+            if (rpcClient.batchSize() > 1) {
+                rpcBatchingSender = registerBean(RpcType.ASYNC.getName() + "-BatchingSender-" + rpcName, RpcBatchingSender.class, sender, rpcCodec, rpcClient.batchSize(), getRpcProperties().getClientBatchMaxBytes(), getRpcProperties().getClientBatchLinger(), RpcCompressorFactory.ALWAYS.equals(getRpcProperties().getClientRequestCompression()) ? rpcCompressor : null, getRpcProperties().getCompressionThreshold());
+            }
         }
-        return (T) Proxy.newProxyInstance(this.rpcClientInterface.getClassLoader(), new Class[]{this.rpcClientInterface}, new RpcClientProxy<>(this.rpcClientInterface, rpcName, rpcType, sender, getRpcProperties()));
+        return (T) Proxy.newProxyInstance(this.rpcClientInterface.getClassLoader(), new Class<?>[]{this.rpcClientInterface}, new RpcClientProxy<>(this.rpcClientInterface, rpcName, rpcType, sender, getRpcProperties(), rpcCodec, rpcReplyDispatcher, replyTimeout, rpcBatchingSender, rpcCompressor, RpcMetricsFactory.getRpcMetrics(this.beanFactory, getRpcProperties()), rpcType == RpcType.SYNC && rpcClient.circuitBreaker() ? getRpcCircuitBreakerManager() : null, rpcType == RpcType.SYNC ? getRpcCacheManager() : null));
     }
 
     @Override
@@ -76,27 +88,56 @@ public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAwar
         return true;
     }
 
+    /**
+     * 实例化 RpcReplyDispatcher, 所有 SYNC-RpcClient 共用
+     */
+    private RpcReplyDispatcher getRpcReplyDispatcher() {
+        if (this.rpcReplyDispatcher == null) {
+            if (this.beanFactory.containsBean("rpcReplyDispatcher")) {
+                this.rpcReplyDispatcher = this.beanFactory.getBean("rpcReplyDispatcher", RpcReplyDispatcher.class);
+            } else {
+                String replyMode = getRpcProperties().getClientReplyMode();
+                switch (replyMode) {
+                    case RpcReplyDispatcher.QUEUE:
+                        Queue replyQueue = replyQueue(UUID.randomUUID().toString());
+                        replyBinding(replyQueue);
+                        this.rpcReplyDispatcher = registerBean("rpcReplyDispatcher", RpcReplyDispatcher.class, replyQueue.getName(), getRpcProperties().getClientCallbackThreads(), getRpcProperties().getClientSendThreads());
+                        replyMessageListenerContainer(replyQueue, this.rpcReplyDispatcher, getConnectionFactory());
+                        break;
+                    case RpcReplyDispatcher.DIRECT:
+                        DirectReplyToMessageListenerContainer directReplyToContainer = registerBean(RpcType.SYNC.getName() + "-DirectReplyToMessageListenerContainer", DirectReplyToMessageListenerContainer.class, getConnectionFactory());
+                        this.rpcReplyDispatcher = registerBean("rpcReplyDispatcher", RpcReplyDispatcher.class, directReplyToContainer, getRpcProperties().getClientCallbackThreads(), getRpcProperties().getClientSendThreads());
+                        directReplyToContainer.setMessageListener(this.rpcReplyDispatcher);
+                        break;
+                    default:
+                        throw new RuntimeException("simple-rpc.client-reply-mode: " + replyMode + " 不支持, 可选 queue、direct");
+                }
+            }
+        }
+        return this.rpcReplyDispatcher;
+    }
+
     /**
      * 实例化 replyQueue
      */
-    private Queue replyQueue(String rpcName, String rabbitClientId) {
-        return registerBean(RpcType.SYNC.getName() + "-ReplyQueue-" + rpcName, Queue.class, rpcName + ".reply." + rabbitClientId, false, false, true);
+    private Queue replyQueue(String rabbitClientId) {
+        return registerBean(RpcType.SYNC.getName() + "-ReplyQueue", Queue.class, "simple.rpc.sync.reply." + rabbitClientId, false, false, true);
     }
 
     /**
      * 实例化 ReplyBinding
      */
-    private void replyBinding(String rpcName, Queue queue) {
-        registerBean(RpcType.SYNC.getName() + "-ReplyBinding-" + rpcName, Binding.class, queue.getName(), Binding.DestinationType.QUEUE, getSyncReplyDirectExchange().getName(), queue.getName(), Collections.<String, Object>emptyMap());
+    private void replyBinding(Queue queue) {
+        registerBean(RpcType.SYNC.getName() + "-ReplyBinding", Binding.class, queue.getName(), Binding.DestinationType.QUEUE, getSyncReplyDirectExchange().getName(), queue.getName(), Collections.<String, Object>emptyMap());
     }
 
     /**
      * 实例化 ReplyMessageListenerContainer
      */
-    private void replyMessageListenerContainer(String rpcName, Queue queue, RabbitTemplate syncSender, ConnectionFactory connectionFactory) {
-        SimpleMessageListenerContainer replyMessageListenerContainer = registerBean(RpcType.SYNC.getName() + "-ReplyMessageListenerContainer-" + rpcName, SimpleMessageListenerContainer.class, connectionFactory);
+    private void replyMessageListenerContainer(Queue queue, RpcReplyDispatcher rpcReplyDispatcher, ConnectionFactory connectionFactory) {
+        SimpleMessageListenerContainer replyMessageListenerContainer = registerBean(RpcType.SYNC.getName() + "-ReplyMessageListenerContainer", SimpleMessageListenerContainer.class, connectionFactory);
         replyMessageListenerContainer.setQueueNames(queue.getName());
-        replyMessageListenerContainer.setMessageListener(syncSender);
+        replyMessageListenerContainer.setMessageListener(rpcReplyDispatcher);
     }
 
     /**
@@ -111,19 +152,12 @@ public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAwar
     }
 
     /**
-     * 实例化 SyncSender
+     * 实例化 SyncSender, 不设置 RetryTemplate, 由 RpcClientProxy 按 RpcRetryPolicy 只重试幂等方法
      */
-    private RabbitTemplate syncSender(String rpcName, Queue replyQueue, int replyTimeout, int maxAttempts, ConnectionFactory connectionFactory) {
-        SimpleRetryPolicy simpleRetryPolicy = new SimpleRetryPolicy();
-        simpleRetryPolicy.setMaxAttempts(maxAttempts);
-        RetryTemplate retryTemplate = new RetryTemplate();
-        retryTemplate.setRetryPolicy(simpleRetryPolicy);
+    private RabbitTemplate syncSender(String rpcName, ConnectionFactory connectionFactory) {
         RabbitTemplate syncSender = registerBean(RpcType.SYNC.getName() + "-Sender-" + rpcName, RabbitTemplate.class, connectionFactory);
         syncSender.setDefaultReceiveQueue(rpcName);
         syncSender.setRoutingKey(rpcName);
-        syncSender.setReplyAddress(replyQueue.getName());
-        syncSender.setReplyTimeout(replyTimeout);
-        syncSender.setRetryTemplate(retryTemplate);
         syncSender.setUserCorrelationId(true);
         return syncSender;
     }
@@ -152,6 +186,34 @@ public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAwar
         return this.rpcProperties;
     }
 
+    /**
+     * 实例化 RpcCircuitBreakerManager, 同一上下文的 RpcClient 共用
+     */
+    private RpcCircuitBreakerManager getRpcCircuitBreakerManager() {
+        if (this.rpcCircuitBreakerManager == null) {
+            if (this.beanFactory.containsBean("rpcCircuitBreakerManager")) {
+                this.rpcCircuitBreakerManager = this.beanFactory.getBean("rpcCircuitBreakerManager", RpcCircuitBreakerManager.class);
+            } else {
+                this.rpcCircuitBreakerManager = registerBean("rpcCircuitBreakerManager", RpcCircuitBreakerManager.class);
+            }
+        }
+        return this.rpcCircuitBreakerManager;
+    }
+
+    /**
+     * 实例化 RpcCacheManager, 同一上下文共用
+     */
+    private RpcCacheManager getRpcCacheManager() {
+        if (this.rpcCacheManager == null) {
+            if (this.beanFactory.containsBean("rpcCacheManager")) {
+                this.rpcCacheManager = this.beanFactory.getBean("rpcCacheManager", RpcCacheManager.class);
+            } else {
+                this.rpcCacheManager = registerBean("rpcCacheManager", RpcCacheManager.class);
+            }
+        }
+        return this.rpcCacheManager;
+    }
+
     /**
      * 实例化 SyncReplyDirectExchange
      */
@@ -0,0 +1,48 @@
+package vip.toby.rpc.client;
+
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Reactor 支持, 仅在 classpath 存在 reactor-core 时加载
+ *
+ * @author toby
+ */
+final class RpcClientReactiveSupport {
+
+    private RpcClientReactiveSupport() {
+    }
+
+    static boolean isMono(Type type, Type argumentType) {
+        return RpcClientProxy.isGenericOf(type, Mono.class, argumentType);
+    }
+
+    /**
+     * 每次订阅发起一次调用, 取消订阅时取消在途调用
+     */
+    static <R> Mono<R> mono(Supplier<CompletableFuture<R>> call) {
+        return Mono.create(sink -> {
+            CompletableFuture<R> future = call.get();
+            sink.onCancel(() -> future.cancel(false));
+            future.whenComplete((result, throwable) -> {
+                if (throwable == null) {
+                    sink.success(result);
+                } else if (!(throwable instanceof CancellationException)) {
+                    sink.error(throwable);
+                }
+            });
+        });
+    }
+
+    /**
+     * 每次订阅发送一次消息
+     */
+    static Mono<Void> monoVoid(Runnable call) {
+        return Mono.fromRunnable(call);
+    }
+
+}
@@ -0,0 +1,91 @@
+package vip.toby.rpc.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 调用耗时直方图(毫秒), 无锁实现, 用于按最近的耗时分布计算分位数
+ * <p>
+ * 16 毫秒以下每毫秒一个桶, 以上每个 2 的幂区间 16 个桶, 误差不超过 6.25%; 样本数达到 DECAY_COUNT 时所有桶减半, 使分布跟随最近的调用
+ *
+ * @author toby
+ */
+class RpcLatencyHistogram {
+
+    private final static int SUB_BUCKETS = 16;
+    private final static int SUB_BITS = 4;
+    private final static int BUCKETS = (31 - SUB_BITS + 1) * SUB_BUCKETS;
+    private final static long DECAY_COUNT = 4096;
+    private final static long MIN_COUNT = 100;
+    private final static int REFRESH_MASK = 63;
+
+    private final int percentile;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private volatile long cachedPercentile = -1;
+
+    RpcLatencyHistogram(int percentile) {
+        if (percentile < 1 || percentile > 100) {
+            throw new RuntimeException("RpcLatencyHistogram percentile 取值 1-100");
+        }
+        this.percentile = percentile;
+    }
+
+    void record(long latency) {
+        this.buckets.incrementAndGet(index(latency));
+        long n = this.count.incrementAndGet();
+        if (n >= DECAY_COUNT && this.count.compareAndSet(n, n / 2)) {
+            // 并发记录时的少量误差可以接受
+            for (int i = 0; i < BUCKETS; i++) {
+                long value = this.buckets.get(i);
+                if (value > 0) {
+                    this.buckets.addAndGet(i, -(value - value / 2));
+                }
+            }
+        }
+        if ((n & REFRESH_MASK) == 0) {
+            this.cachedPercentile = n < MIN_COUNT ? -1 : compute();
+        }
+    }
+
+    /**
+     * 分位数耗时, 样本不足时返回 -1; 每 64 个样本重新计算一次
+     */
+    long getPercentile() {
+        return this.cachedPercentile;
+    }
+
+    private long compute() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += this.buckets.get(i);
+        }
+        long target = (total * this.percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= target && seen > 0) {
+                return upperBound(i);
+            }
+        }
+        return -1;
+    }
+
+    private static int index(long latency) {
+        long value = Math.min(Math.max(latency, 0), Integer.MAX_VALUE);
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return ((SUB_BUCKETS + (long) (index % SUB_BUCKETS) + 1) << shift) - 1;
+    }
+
+}
@@ -0,0 +1,187 @@
+package vip.toby.rpc.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.DirectReplyToMessageListenerContainer;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.RabbitExceptionTranslator;
+import org.springframework.beans.factory.DisposableBean;
+import vip.toby.rpc.entity.RpcProtocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 回复消息分发, 所有 SYNC-RpcClient 共用一个回复消费者, 按 correlationId 完成在途调用
+ * <p>
+ * queue 模式使用一个独占回复队列; direct 模式使用 amq.rabbitmq.reply-to, 请求必须从持有回复消费者的 channel 发出
+ * <p>
+ * 回复及超时均在完成线程池中完成调用, 依赖的解码、缓存、熔断、指标及调用方的后续处理不占用回复消费者线程和定时器线程
+ * <p>
+ * 重试、对冲由定时器触发, 发送可能阻塞, 在有界的发送线程池中执行
+ *
+ * @author toby
+ */
+class RpcReplyDispatcher implements MessageListener, DisposableBean {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RpcReplyDispatcher.class);
+
+    static final String QUEUE = "queue";
+    static final String DIRECT = "direct";
+
+    private final static String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+    private final Map<String, CompletableFuture<Message>> pendingReplyMap = new ConcurrentHashMap<>(1024);
+    private final String replyAddress;
+    private final DirectReplyToMessageListenerContainer directReplyToContainer;
+    private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+    private final ExecutorService callbackExecutor;
+    private final ExecutorService sendExecutor;
+
+    RpcReplyDispatcher(String replyAddress, int callbackThreads, int sendThreads) {
+        this.replyAddress = replyAddress;
+        this.directReplyToContainer = null;
+        this.callbackExecutor = callbackExecutor(callbackThreads);
+        this.sendExecutor = sendExecutor(sendThreads);
+    }
+
+    RpcReplyDispatcher(DirectReplyToMessageListenerContainer directReplyToContainer, int callbackThreads, int sendThreads) {
+        this.replyAddress = DIRECT_REPLY_TO;
+        this.directReplyToContainer = directReplyToContainer;
+        this.callbackExecutor = callbackExecutor(callbackThreads);
+        this.sendExecutor = sendExecutor(sendThreads);
+    }
+
+    /**
+     * 完成线程池, 队列中的任务数量不超过在途调用数量, 因此不另设上限
+     */
+    private static ExecutorService callbackExecutor(int threads) {
+        if (threads < 1) {
+            throw new RuntimeException("simple-rpc.client-callback-threads 必须大于 0");
+        }
+        AtomicInteger index = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "simple-rpc-reply-callback-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 发送线程池, 队列有界, 发送阻塞(如连接断开)时拒绝新的任务而不是无限堆积
+     */
+    private static ExecutorService sendExecutor(int threads) {
+        if (threads < 1) {
+            throw new RuntimeException("simple-rpc.client-send-threads 必须大于 0");
+        }
+        AtomicInteger index = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 1024), runnable -> {
+            Thread thread = new Thread(runnable, "simple-rpc-send-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 在发送线程池中执行重试、对冲的发送, 队列已满或已关闭时抛出 RejectedExecutionException
+     */
+    void sendLater(Runnable task) {
+        this.sendExecutor.execute(task);
+    }
+
+    /**
+     * 发送请求, 不等待回复; 超时后以 null 完成, 取消时移除在途记录
+     */
+    CompletableFuture<Message> sendAndReceive(RabbitTemplate sender, Message message, long replyTimeout) {
+        String correlationId = message.getMessageProperties().getCorrelationId();
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        this.pendingReplyMap.put(correlationId, future);
+        RpcTimer.Timeout timeout = RpcTimer.getInstance().newTimeout(() -> {
+            if (this.pendingReplyMap.remove(correlationId, future)) {
+                complete(future, null);
+            }
+        }, replyTimeout, TimeUnit.MILLISECONDS);
+        future.whenComplete((reply, throwable) -> {
+            timeout.cancel();
+            this.pendingReplyMap.remove(correlationId, future);
+        });
+        message.getMessageProperties().setReplyTo(this.replyAddress);
+        // 剩余的超时时间为相对值, 服务端按自己的时钟计时, 不受两端时钟偏差影响
+        message.getMessageProperties().setHeader(RpcProtocol.TIMEOUT_HEADER, replyTimeout);
+        message.getMessageProperties().setHeader(RpcProtocol.SENT_TIME_HEADER, System.currentTimeMillis());
+        try {
+            if (this.directReplyToContainer == null) {
+                sender.send(message);
+            } else {
+                sendDirect(sender, message, future);
+            }
+        } catch (AmqpException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * direct 模式, 占用一个回复消费者的 channel 直到调用完成, 与 RabbitTemplate 的 direct reply-to 一致
+     */
+    private void sendDirect(RabbitTemplate sender, Message message, CompletableFuture<Message> future) {
+        if (!this.directReplyToContainer.isRunning()) {
+            this.directReplyToContainer.start();
+        }
+        DirectReplyToMessageListenerContainer.ChannelHolder channelHolder = this.directReplyToContainer.getChannelHolder();
+        try {
+            channelHolder.getChannel().basicPublish(sender.getExchange(), sender.getRoutingKey(), false, this.messagePropertiesConverter.fromMessageProperties(message.getMessageProperties(), StandardCharsets.UTF_8.name()), message.getBody());
+        } catch (Exception e) {
+            // 发送失败时取消该消费者, 避免复用异常的 channel; 此时还未注册完成时的归还, 只释放这一次
+            this.directReplyToContainer.releaseConsumerFor(channelHolder, true, "Publish failed");
+            throw RabbitExceptionTranslator.convertRabbitAccessException(e);
+        }
+        // 发送成功后才在调用完成时归还; 回复可能已先到达, 此时立即归还
+        future.whenComplete((reply, throwable) -> this.directReplyToContainer.releaseConsumerFor(channelHolder, false, null));
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        String correlationId = message.getMessageProperties().getCorrelationId();
+        CompletableFuture<Message> future = correlationId == null ? null : this.pendingReplyMap.remove(correlationId);
+        if (future == null) {
+            // 调用已超时或已取消
+            LOGGER.warn("Reply Discarded, CorrelationId: " + correlationId);
+            return;
+        }
+        complete(future, message);
+    }
+
+    @Override
+    public void destroy() {
+        // 已提交的任务继续执行, 之后提交的重试、对冲直接失败
+        this.callbackExecutor.shutdown();
+        this.sendExecutor.shutdown();
+    }
+
+    /**
+     * 在完成线程池中完成调用; 关闭后在当前线程完成, 不丢弃回复
+     */
+    private void complete(CompletableFuture<Message> future, Message message) {
+        try {
+            this.callbackExecutor.execute(() -> future.complete(message));
+        } catch (RejectedExecutionException e) {
+            future.complete(message);
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package vip.toby.rpc.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SYNC-RpcClient 重试策略, 每个 RpcClient 一个
+ * <p>
+ * 指数退避 + 全抖动, 避免同时失败的调用同时重试; 重试受令牌桶预算限制, 带来的额外负载不超过 budgetPercent%
+ *
+ * @author toby
+ */
+class RpcRetryPolicy {
+
+    private final String name;
+    private final int maxAttempts;
+    private final long initialInterval;
+    private final int multiplier;
+    private final long maxInterval;
+    private final RpcTokenBucket budget;
+
+    RpcRetryPolicy(String name, int maxAttempts, int initialInterval, int multiplier, int maxInterval, int budgetPercent) {
+        if (maxAttempts < 1 || initialInterval < 1 || multiplier < 1 || maxInterval < initialInterval) {
+            throw new RuntimeException("RpcRetryPolicy: " + name + " 配置错误, maxAttempts、initialInterval、multiplier 必须大于 0, maxInterval 不能小于 initialInterval");
+        }
+        this.name = name;
+        this.maxAttempts = maxAttempts;
+        this.initialInterval = initialInterval;
+        this.multiplier = multiplier;
+        this.maxInterval = maxInterval;
+        this.budget = new RpcTokenBucket(budgetPercent);
+    }
+
+    /**
+     * 每次调用存入预算
+     */
+    void deposit() {
+        this.budget.deposit();
+    }
+
+    /**
+     * 已尝试 attempts 次后是否允许重试, 允许时取出一个令牌
+     */
+    boolean tryRetry(int attempts) {
+        return attempts < this.maxAttempts && this.budget.tryAcquire();
+    }
+
+    /**
+     * 第 attempts 次失败后的退避时间, 在 [0, min(maxInterval, initialInterval * multiplier^(attempts-1))] 内随机
+     */
+    long backoff(int attempts) {
+        long interval = this.initialInterval;
+        for (int i = 1; i < attempts && interval < this.maxInterval; i++) {
+            interval *= this.multiplier;
+        }
+        return ThreadLocalRandom.current().nextLong(Math.min(interval, this.maxInterval) + 1);
+    }
+
+    int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    long getRetryCount() {
+        return this.budget.getAcquiredCount();
+    }
+
+    /**
+     * 因预算耗尽放弃的重试数量
+     */
+    long getExhaustedCount() {
+        return this.budget.getExhaustedCount();
+    }
+
+    @Override
+    public String toString() {
+        return "RpcRetryPolicy-" + this.name + ", Retried: " + getRetryCount() + ", Exhausted: " + getExhaustedCount();
+    }
+
+}
@@ -0,0 +1,190 @@
+package vip.toby.rpc.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 时间轮定时器, 用于大量在途调用的超时处理
+ * <p>
+ * 新增和取消均为 O(1) 且无锁, 由单个守护线程按 tick 推进, 精度为一个 tick;
+ * 任务在定时器线程执行, 必须足够轻量(例如完成一个 Future)
+ *
+ * @author toby
+ */
+class RpcTimer {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RpcTimer.class);
+
+    private final static RpcTimer INSTANCE = new RpcTimer(10, 1024);
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> timeouts = new ConcurrentLinkedQueue<>();
+    private final long startTime;
+
+    private RpcTimer(long tickDuration, int wheelSize) {
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.startTime = System.nanoTime();
+        Thread worker = new Thread(this::run, "simple-rpc-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    static RpcTimer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 新增定时任务
+     */
+    Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - this.startTime + unit.toNanos(delay));
+        this.timeouts.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            long deadline = this.tickDuration * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - this.startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            transferTimeouts(tick);
+            this.wheel[(int) (tick & this.mask)].expire();
+            tick++;
+        }
+    }
+
+    /**
+     * 将新增任务放入对应的槽位, 每个 tick 最多处理 100000 个, 避免饿死过期处理
+     */
+    private void transferTimeouts(long tick) {
+        for (int i = 0; i < 100000; i++) {
+            Timeout timeout = this.timeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state == Timeout.CANCELLED) {
+                continue;
+            }
+            long calculated = timeout.deadline / this.tickDuration;
+            timeout.remainingRounds = (calculated - tick) / this.wheel.length;
+            // 已经过期的任务放到当前槽位
+            long ticks = Math.max(calculated, tick);
+            this.wheel[(int) (ticks & this.mask)].add(timeout);
+        }
+    }
+
+    /**
+     * 定时任务句柄
+     */
+    static final class Timeout {
+
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state = INIT;
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务, 槽位中的节点在下次经过时移除
+         */
+        boolean cancel() {
+            return STATE_UPDATER.compareAndSet(this, INIT, CANCELLED);
+        }
+
+        private void expire() {
+            if (!STATE_UPDATER.compareAndSet(this, INIT, EXPIRED)) {
+                return;
+            }
+            try {
+                this.task.run();
+            } catch (Throwable t) {
+                LOGGER.warn("RpcTimer Task Exception: " + t.getMessage(), t);
+            }
+        }
+    }
+
+    /**
+     * 槽位, 仅由定时器线程访问
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            if (this.head == null) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        private void expire() {
+            Timeout timeout = this.head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.state == Timeout.CANCELLED) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == this.head) {
+                this.head = next;
+            }
+            if (timeout == this.tail) {
+                this.tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+
+}
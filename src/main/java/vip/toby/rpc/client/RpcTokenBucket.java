@@ -0,0 +1,69 @@
+package vip.toby.rpc.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 令牌桶预算, 每次调用存入 percent% 个令牌, 每次额外发送取出一个, 额外负载不超过 percent%, 桶容量即允许的突发数量
+ *
+ * @author toby
+ */
+class RpcTokenBucket {
+
+    // 1 个令牌 = 1000 份
+    private final static long TOKEN = 1000;
+    private final static long MAX_TOKENS = 10 * TOKEN;
+
+    private final long deposit;
+    private final AtomicLong tokens = new AtomicLong(MAX_TOKENS);
+    private final LongAdder acquiredCount = new LongAdder();
+    private final LongAdder exhaustedCount = new LongAdder();
+
+    RpcTokenBucket(int percent) {
+        if (percent < 0 || percent > 100) {
+            throw new RuntimeException("RpcTokenBucket percent 取值 0-100");
+        }
+        this.deposit = TOKEN * percent / 100;
+    }
+
+    /**
+     * 每次调用存入令牌
+     */
+    void deposit() {
+        long current;
+        do {
+            current = this.tokens.get();
+            if (current >= MAX_TOKENS) {
+                return;
+            }
+        } while (!this.tokens.compareAndSet(current, Math.min(MAX_TOKENS, current + this.deposit)));
+    }
+
+    /**
+     * 取出一个令牌, 不足时返回 false
+     */
+    boolean tryAcquire() {
+        long current;
+        do {
+            current = this.tokens.get();
+            if (current < TOKEN) {
+                this.exhaustedCount.increment();
+                return false;
+            }
+        } while (!this.tokens.compareAndSet(current, current - TOKEN));
+        this.acquiredCount.increment();
+        return true;
+    }
+
+    long getAcquiredCount() {
+        return this.acquiredCount.sum();
+    }
+
+    /**
+     * 因预算耗尽被拒绝的数量
+     */
+    long getExhaustedCount() {
+        return this.exhaustedCount.sum();
+    }
+
+}
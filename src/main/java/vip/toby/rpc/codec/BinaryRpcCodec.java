@@ -0,0 +1,517 @@
+package vip.toby.rpc.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.parser.deserializer.JavaBeanDeserializer;
+import com.alibaba.fastjson.serializer.JavaBeanSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.util.FieldInfo;
+import com.alibaba.fastjson.util.JavaBeanInfo;
+import com.alibaba.fastjson.util.TypeUtils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑二进制编解码
+ * <p>
+ * 与 JSON 报文结构一致(自描述, 不依赖两端共享 JavaBean 类), 数值使用 varint, 字符串不转义
+ * 同一报文中重复出现的字段名只写一次, 之后按序号引用
+ * <p>
+ * JavaBean 按缓存的 getter 逐个字段写出, 解码时按缓存的 setter 直接写入目标类型, 不经过 JSONObject
+ *
+ * @author toby
+ */
+public class BinaryRpcCodec implements RpcCodec {
+
+    public static final String NAME = "binary";
+    public static final String CONTENT_TYPE = "application/x-simple-rpc-binary";
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte FLOAT = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte STRING = 7;
+    private static final byte MAP = 8;
+    private static final byte LIST = 9;
+    private static final byte DECIMAL = 10;
+    private static final byte BIG_INTEGER = 11;
+    private static final byte BYTES = 12;
+    private static final byte DATE = 13;
+    // 独立的字段名表, 用于拼接的数组元素
+    private static final byte SCOPE = 14;
+
+    private static final FieldInfo[] NOT_BEAN_GETTERS = new FieldInfo[0];
+    private static final BeanSetters NOT_BEAN_SETTERS = new BeanSetters(null, null);
+    private static final Map<Class<?>, FieldInfo[]> BEAN_GETTERS_MAP = new ConcurrentHashMap<>();
+    private static final Map<Type, BeanSetters> BEAN_SETTERS_MAP = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(Object object) {
+        Writer writer = new Writer();
+        writer.writeValue(object);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public byte[] encodeArray(List<byte[]> elements) {
+        // 直接拼接, 不重新序列化
+        Writer writer = new Writer();
+        writer.writeByte(LIST);
+        writer.writeVarLong(elements.size());
+        for (byte[] element : elements) {
+            writer.writeByte(SCOPE);
+            writer.writeBytes(element, element.length);
+        }
+        return writer.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Type type) {
+        try {
+            return TypeUtils.cast(new Reader(bytes).readValue(type), type, ParserConfig.getGlobalInstance());
+        } catch (IndexOutOfBoundsException e) {
+            throw new RuntimeException("Binary 报文格式错误, 报文不完整", e);
+        }
+    }
+
+    /**
+     * JavaBean 的 getter, 非 JavaBean 返回 NOT_BEAN_GETTERS
+     */
+    private static FieldInfo[] getBeanGetters(Class<?> clazz) {
+        return BEAN_GETTERS_MAP.computeIfAbsent(clazz, k -> {
+            if (!(SerializeConfig.getGlobalInstance().getObjectWriter(k) instanceof JavaBeanSerializer)) {
+                return NOT_BEAN_GETTERS;
+            }
+            List<FieldInfo> getters = TypeUtils.computeGetters(k, null);
+            for (FieldInfo getter : getters) {
+                getter.setAccessible();
+            }
+            return getters.toArray(new FieldInfo[0]);
+        });
+    }
+
+    /**
+     * JavaBean 的无参构造及 setter, 非 JavaBean 或需要构造参数、builder 等的类返回 NOT_BEAN_SETTERS
+     */
+    private static BeanSetters getBeanSetters(Type type) {
+        return BEAN_SETTERS_MAP.computeIfAbsent(type, k -> {
+            Class<?> clazz = TypeUtils.getClass(k);
+            if (clazz == null || clazz.isInterface() || !(ParserConfig.getGlobalInstance().getDeserializer(k) instanceof JavaBeanDeserializer)) {
+                return NOT_BEAN_SETTERS;
+            }
+            JavaBeanInfo beanInfo = JavaBeanInfo.build(clazz, k, null);
+            if (beanInfo.defaultConstructor == null || beanInfo.defaultConstructorParameterSize > 0 || beanInfo.creatorConstructor != null || beanInfo.factoryMethod != null || beanInfo.builderClass != null) {
+                return NOT_BEAN_SETTERS;
+            }
+            Map<String, FieldInfo> setterMap = new HashMap<>(beanInfo.fields.length * 4 / 3 + 1);
+            for (FieldInfo setter : beanInfo.fields) {
+                if (setter.getOnly) {
+                    return NOT_BEAN_SETTERS;
+                }
+                setter.setAccessible();
+                setterMap.put(setter.name, setter);
+            }
+            beanInfo.defaultConstructor.setAccessible(true);
+            return new BeanSetters(beanInfo.defaultConstructor, setterMap);
+        });
+    }
+
+    private static final class BeanSetters {
+
+        private final Constructor<?> constructor;
+        private final Map<String, FieldInfo> setterMap;
+
+        private BeanSetters(Constructor<?> constructor, Map<String, FieldInfo> setterMap) {
+            this.constructor = constructor;
+            this.setterMap = setterMap;
+        }
+    }
+
+    @Override
+    public String toString(byte[] bytes) {
+        try {
+            return JSON.toJSONString(new Reader(bytes).readValue());
+        } catch (IndexOutOfBoundsException e) {
+            throw new RuntimeException("Binary 报文格式错误, 报文不完整", e);
+        }
+    }
+
+    private static final class Writer {
+
+        private byte[] buffer = new byte[256];
+        private int position;
+        // 已写出的字段名及序号
+        private Map<String, Integer> nameMap;
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof String) {
+                writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writeByte(INT);
+                writeVarLong(zigZag(((Number) value).longValue()));
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeVarLong(zigZag((Long) value));
+            } else if (value instanceof Float) {
+                writeByte(FLOAT);
+                writeFixed(Float.floatToIntBits((Float) value), 4);
+            } else if (value instanceof Double) {
+                writeByte(DOUBLE);
+                writeFixed(Double.doubleToLongBits((Double) value), 8);
+            } else if (value instanceof BigDecimal) {
+                writeByte(DECIMAL);
+                writeString(value.toString());
+            } else if (value instanceof BigInteger) {
+                writeByte(BIG_INTEGER);
+                writeString(value.toString());
+            } else if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                writeByte(BYTES);
+                writeVarLong(bytes.length);
+                writeBytes(bytes, bytes.length);
+            } else if (value instanceof Date) {
+                writeByte(DATE);
+                writeVarLong(zigZag(((Date) value).getTime()));
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeByte(MAP);
+                writeVarLong(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeName(String.valueOf(entry.getKey()));
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof Collection) {
+                Collection<?> collection = (Collection<?>) value;
+                writeByte(LIST);
+                writeVarLong(collection.size());
+                for (Object item : collection) {
+                    writeValue(item);
+                }
+            } else {
+                FieldInfo[] getters = getBeanGetters(value.getClass());
+                if (getters != NOT_BEAN_GETTERS) {
+                    writeBean(value, getters);
+                    return;
+                }
+                // 数组、枚举等先按 JSON 规则转换
+                Object json = JSON.toJSON(value);
+                if (json == value) {
+                    writeByte(STRING);
+                    writeString(String.valueOf(value));
+                } else {
+                    writeValue(json);
+                }
+            }
+        }
+
+        /**
+         * 按 getter 顺序写出非 null 字段
+         */
+        private void writeBean(Object bean, FieldInfo[] getters) {
+            Object[] values = new Object[getters.length];
+            int size = 0;
+            for (int i = 0; i < getters.length; i++) {
+                try {
+                    values[i] = getters[i].get(bean);
+                } catch (Exception e) {
+                    throw new RuntimeException("Binary 编码失败, Class: " + bean.getClass().getName() + ", Field: " + getters[i].name, e);
+                }
+                if (values[i] != null) {
+                    size++;
+                }
+            }
+            writeByte(MAP);
+            writeVarLong(size);
+            for (int i = 0; i < getters.length; i++) {
+                if (values[i] != null) {
+                    writeName(getters[i].name);
+                    writeValue(values[i]);
+                }
+            }
+        }
+
+        /**
+         * 字段名: 0 + 字符串表示新名称, 否则为已写出名称的序号 + 1
+         */
+        private void writeName(String name) {
+            if (this.nameMap == null) {
+                this.nameMap = new HashMap<>();
+            }
+            Integer index = this.nameMap.get(name);
+            if (index != null) {
+                writeVarLong(index + 1);
+                return;
+            }
+            this.nameMap.put(name, this.nameMap.size());
+            writeVarLong(0);
+            writeString(name);
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes, bytes.length);
+        }
+
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.buffer[this.position++] = (byte) value;
+        }
+
+        private void writeFixed(long value, int length) {
+            ensureCapacity(length);
+            for (int i = length - 1; i >= 0; i--) {
+                this.buffer[this.position++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        private void writeByte(byte value) {
+            ensureCapacity(1);
+            this.buffer[this.position++] = value;
+        }
+
+        private void writeBytes(byte[] bytes, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, 0, this.buffer, this.position, length);
+            this.position += length;
+        }
+
+        private void ensureCapacity(int length) {
+            if (this.position + length > this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length << 1, this.position + length));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(this.buffer, this.position);
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buffer;
+        private int position;
+        // 已读取的字段名, 按序号引用
+        private List<String> names = new ArrayList<>();
+
+        private Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * JavaBean 直接写入目标类型, 集合元素按泛型参数读取, 其他返回 readValue()
+         */
+        private Object readValue(Type type) {
+            if (type == null || type == Object.class) {
+                return readValue();
+            }
+            byte tag = this.buffer[this.position];
+            if (tag == SCOPE) {
+                List<String> names = this.names;
+                this.names = new ArrayList<>();
+                this.position++;
+                Object value = readValue(type);
+                this.names = names;
+                return value;
+            }
+            if (tag == MAP) {
+                BeanSetters beanSetters = getBeanSetters(type);
+                if (beanSetters != NOT_BEAN_SETTERS) {
+                    this.position++;
+                    return readBean(beanSetters);
+                }
+            } else if (tag == LIST && type instanceof ParameterizedType && Collection.class.isAssignableFrom(TypeUtils.getClass(type))) {
+                Type elementType = ((ParameterizedType) type).getActualTypeArguments()[0];
+                this.position++;
+                int listSize = readLength();
+                JSONArray list = new JSONArray(listSize);
+                for (int i = 0; i < listSize; i++) {
+                    list.add(readValue(elementType));
+                }
+                return list;
+            }
+            return readValue();
+        }
+
+        private Object readBean(BeanSetters beanSetters) {
+            int size = readLength();
+            Object bean;
+            try {
+                bean = beanSetters.constructor.newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("Binary 解码失败, Class: " + beanSetters.constructor.getDeclaringClass().getName(), e);
+            }
+            for (int i = 0; i < size; i++) {
+                FieldInfo setter = beanSetters.setterMap.get(readName());
+                if (setter == null) {
+                    // 忽略目标类型中不存在的字段
+                    readValue();
+                    continue;
+                }
+                Object value = readValue(setter.fieldType);
+                if (value == null) {
+                    continue;
+                }
+                try {
+                    setter.set(bean, TypeUtils.cast(value, setter.fieldType, ParserConfig.getGlobalInstance()));
+                } catch (Exception e) {
+                    throw new RuntimeException("Binary 解码失败, Class: " + beanSetters.constructor.getDeclaringClass().getName() + ", Field: " + setter.name, e);
+                }
+            }
+            return bean;
+        }
+
+        private Object readValue() {
+            byte tag = this.buffer[this.position++];
+            switch (tag) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case INT:
+                    return (int) unZigZag(readVarLong());
+                case LONG:
+                    return unZigZag(readVarLong());
+                case FLOAT:
+                    return Float.intBitsToFloat((int) readFixed(4));
+                case DOUBLE:
+                    return Double.longBitsToDouble(readFixed(8));
+                case STRING:
+                    return readString();
+                case DECIMAL:
+                    return new BigDecimal(readString());
+                case BIG_INTEGER:
+                    return new BigInteger(readString());
+                case BYTES:
+                    int length = readLength();
+                    byte[] bytes = Arrays.copyOfRange(this.buffer, this.position, this.position + length);
+                    this.position += length;
+                    return bytes;
+                case DATE:
+                    return new Date(unZigZag(readVarLong()));
+                case MAP:
+                    int mapSize = readLength();
+                    JSONObject map = new JSONObject(Math.max(16, mapSize * 4 / 3 + 1));
+                    for (int i = 0; i < mapSize; i++) {
+                        String key = readName();
+                        map.put(key, readValue());
+                    }
+                    return map;
+                case LIST:
+                    int listSize = readLength();
+                    JSONArray list = new JSONArray(listSize);
+                    for (int i = 0; i < listSize; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                case SCOPE:
+                    List<String> names = this.names;
+                    this.names = new ArrayList<>();
+                    Object value = readValue();
+                    this.names = names;
+                    return value;
+                default:
+                    throw new RuntimeException("Binary 报文格式错误, Tag: " + tag + ", Position: " + (this.position - 1));
+            }
+        }
+
+        private String readName() {
+            long index = readVarLong();
+            if (index > 0) {
+                if (index > this.names.size()) {
+                    throw new RuntimeException("Binary 报文格式错误, 字段名序号: " + index + ", Position: " + this.position);
+                }
+                return this.names.get((int) index - 1);
+            }
+            String name = readString();
+            this.names.add(name);
+            return name;
+        }
+
+        private String readString() {
+            int length = readLength();
+            String value = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+            this.position += length;
+            return value;
+        }
+
+        /**
+         * 报文中声明的长度或元素数量, 每个元素至少占 1 字节, 超过剩余字节数即为错误报文, 避免按伪造的长度分配内存
+         */
+        private int readLength() {
+            long length = readVarLong();
+            if (length < 0 || length > this.buffer.length - this.position) {
+                throw new RuntimeException("Binary 报文格式错误, Length: " + length + ", Remaining: " + (this.buffer.length - this.position));
+            }
+            return (int) length;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = this.buffer[this.position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private long readFixed(int length) {
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                value = (value << 8) | (this.buffer[this.position++] & 0xFF);
+            }
+            return value;
+        }
+
+        private static long unZigZag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+}
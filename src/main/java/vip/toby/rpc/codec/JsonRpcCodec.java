@@ -0,0 +1,66 @@
+package vip.toby.rpc.codec;
+
+import com.alibaba.fastjson.JSON;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * JSON 编解码(fastjson)
+ *
+ * @author toby
+ */
+public class JsonRpcCodec implements RpcCodec {
+
+    public static final String NAME = "json";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentType() {
+        return MessageProperties.CONTENT_TYPE_JSON;
+    }
+
+    @Override
+    public byte[] encode(Object object) {
+        return JSON.toJSONBytes(object);
+    }
+
+    @Override
+    public byte[] encodeArray(List<byte[]> elements) {
+        // 直接拼接, 不重新序列化
+        int length = elements.size() + 1;
+        for (byte[] element : elements) {
+            length += element.length;
+        }
+        byte[] bytes = new byte[Math.max(length, 2)];
+        int position = 0;
+        bytes[position++] = '[';
+        for (int i = 0; i < elements.size(); i++) {
+            if (i > 0) {
+                bytes[position++] = ',';
+            }
+            byte[] element = elements.get(i);
+            System.arraycopy(element, 0, bytes, position, element.length);
+            position += element.length;
+        }
+        bytes[position] = ']';
+        return bytes;
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Type type) {
+        return JSON.parseObject(bytes, type);
+    }
+
+    @Override
+    public String toString(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
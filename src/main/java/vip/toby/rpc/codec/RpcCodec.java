@@ -0,0 +1,69 @@
+package vip.toby.rpc.codec;
+
+import com.alibaba.fastjson.JSONArray;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * 报文编解码, 可通过 RpcCodecFactory.register 或 META-INF/services 扩展
+ *
+ * @author toby
+ */
+public interface RpcCodec {
+
+    /**
+     * 编码名称, 用于 @RpcClient、@RpcServer 及 simple-rpc.codec 配置
+     *
+     * @return 名称
+     */
+    String getName();
+
+    /**
+     * 消息的 contentType, 服务端据此选择解码器
+     *
+     * @return contentType
+     */
+    String getContentType();
+
+    /**
+     * 编码
+     *
+     * @param object 对象
+     * @return 字节
+     */
+    byte[] encode(Object object);
+
+    /**
+     * 将多个已编码的对象合并为数组, 用于批量发送, 默认解码后重新编码
+     *
+     * @param elements 已编码的对象
+     * @return 字节
+     */
+    default byte[] encodeArray(List<byte[]> elements) {
+        JSONArray array = new JSONArray(elements.size());
+        for (byte[] element : elements) {
+            array.add(decode(element, Object.class));
+        }
+        return encode(array);
+    }
+
+    /**
+     * 解码
+     *
+     * @param bytes 字节
+     * @param type  目标类型
+     * @param <T>   目标类型
+     * @return 对象
+     */
+    <T> T decode(byte[] bytes, Type type);
+
+    /**
+     * 转换为可读字符串, 仅用于日志
+     *
+     * @param bytes 字节
+     * @return 字符串
+     */
+    String toString(byte[] bytes);
+
+}
@@ -0,0 +1,64 @@
+package vip.toby.rpc.codec;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RpcCodecFactory
+ *
+ * @author toby
+ */
+public final class RpcCodecFactory {
+
+    private final static Map<String, RpcCodec> CODEC_MAP = new ConcurrentHashMap<>();
+    private final static Map<String, RpcCodec> CONTENT_TYPE_CODEC_MAP = new ConcurrentHashMap<>();
+
+    static {
+        register(new JsonRpcCodec());
+        register(new BinaryRpcCodec());
+        // 旧版本客户端固定发送 text/plain 的 JSON 报文
+        CONTENT_TYPE_CODEC_MAP.put(MessageProperties.CONTENT_TYPE_TEXT_PLAIN, CODEC_MAP.get(JsonRpcCodec.NAME));
+        for (RpcCodec rpcCodec : ServiceLoader.load(RpcCodec.class)) {
+            register(rpcCodec);
+        }
+    }
+
+    private RpcCodecFactory() {
+    }
+
+    /**
+     * 注册编解码
+     */
+    public static void register(RpcCodec rpcCodec) {
+        CODEC_MAP.put(rpcCodec.getName(), rpcCodec);
+        CONTENT_TYPE_CODEC_MAP.put(rpcCodec.getContentType(), rpcCodec);
+    }
+
+    /**
+     * 通过名称获取编解码
+     */
+    public static RpcCodec getCodec(String name) {
+        RpcCodec rpcCodec = CODEC_MAP.get(name);
+        if (rpcCodec == null) {
+            throw new RuntimeException("Codec: " + name + " 不存在");
+        }
+        return rpcCodec;
+    }
+
+    /**
+     * 通过 contentType 获取编解码, 未知类型返回默认编解码
+     */
+    public static RpcCodec getCodecByContentType(String contentType, RpcCodec defaultCodec) {
+        if (StringUtils.isBlank(contentType)) {
+            return defaultCodec;
+        }
+        int index = contentType.indexOf(';');
+        RpcCodec rpcCodec = CONTENT_TYPE_CODEC_MAP.get(index < 0 ? contentType : contentType.substring(0, index).trim());
+        return rpcCodec == null ? defaultCodec : rpcCodec;
+    }
+
+}
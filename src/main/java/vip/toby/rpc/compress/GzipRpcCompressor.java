@@ -0,0 +1,53 @@
+package vip.toby.rpc.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip 压缩(JDK)
+ *
+ * @author toby
+ */
+public class GzipRpcCompressor implements RpcCompressor {
+
+    public static final String NAME = "gzip";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream, 8192)) {
+            gzipOutputStream.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes, int maxLength) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) Math.min(maxLength, bytes.length * 4L));
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(bytes), 8192)) {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = gzipInputStream.read(buffer)) > 0) {
+                if (length > maxLength - outputStream.size()) {
+                    throw new RuntimeException("gzip 解压后超过最大长度: " + maxLength);
+                }
+                outputStream.write(buffer, 0, length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+}
@@ -0,0 +1,93 @@
+package vip.toby.rpc.compress;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.util.Arrays;
+
+/**
+ * LZ4 压缩(lz4-java), 按 64KB 分块, 每块为 4 字节原始长度 + 4 字节压缩长度 + LZ4 block
+ * <p>
+ * 解压时逐块写入按实际解压数据增长的缓冲区, 声明的长度只用于校验, 伪造的报文最多多分配一块
+ *
+ * @author toby
+ */
+public class Lz4RpcCompressor implements RpcCompressor {
+
+    public static final String NAME = "lz4";
+
+    private static final int BLOCK_SIZE = 65536;
+    private static final int BLOCK_HEADER_LENGTH = 8;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    // fastDecompressor 不校验输入, 报文损坏时可能越界读取
+    private final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        int capacity = 0;
+        for (int offset = 0; offset < bytes.length; offset += BLOCK_SIZE) {
+            capacity += BLOCK_HEADER_LENGTH + this.compressor.maxCompressedLength(Math.min(BLOCK_SIZE, bytes.length - offset));
+        }
+        byte[] compressed = new byte[capacity];
+        int position = 0;
+        for (int offset = 0; offset < bytes.length; offset += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, bytes.length - offset);
+            int compressedLength = this.compressor.compress(bytes, offset, length, compressed, position + BLOCK_HEADER_LENGTH, capacity - position - BLOCK_HEADER_LENGTH);
+            writeInt(compressed, position, length);
+            writeInt(compressed, position + 4, compressedLength);
+            position += BLOCK_HEADER_LENGTH + compressedLength;
+        }
+        return Arrays.copyOf(compressed, position);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes, int maxLength) {
+        byte[] decompressed = new byte[(int) Math.min(maxLength, Math.min(BLOCK_SIZE, bytes.length * 4L))];
+        int length = 0;
+        int position = 0;
+        while (position < bytes.length) {
+            if (bytes.length - position < BLOCK_HEADER_LENGTH) {
+                throw new RuntimeException("LZ4 报文长度错误: " + bytes.length);
+            }
+            int blockLength = readInt(bytes, position);
+            int compressedLength = readInt(bytes, position + 4);
+            position += BLOCK_HEADER_LENGTH;
+            if (blockLength < 0 || blockLength > BLOCK_SIZE || compressedLength < 0 || compressedLength > bytes.length - position) {
+                throw new RuntimeException("LZ4 分块长度错误: " + blockLength + ", 压缩长度: " + compressedLength);
+            }
+            if (blockLength > maxLength - length) {
+                throw new RuntimeException("LZ4 解压后超过最大长度: " + maxLength);
+            }
+            if (length + blockLength > decompressed.length) {
+                // 按实际解压的数据增长, 最多超出一块
+                decompressed = Arrays.copyOf(decompressed, (int) Math.min(maxLength, Math.max(decompressed.length * 2L, length + blockLength)));
+            }
+            int decompressedLength = this.decompressor.decompress(bytes, position, compressedLength, decompressed, length, blockLength);
+            if (decompressedLength != blockLength) {
+                throw new RuntimeException("LZ4 解压长度与声明不一致: " + decompressedLength + ", 声明: " + blockLength);
+            }
+            length += decompressedLength;
+            position += compressedLength;
+        }
+        return length == decompressed.length ? decompressed : Arrays.copyOf(decompressed, length);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+}
@@ -0,0 +1,34 @@
+package vip.toby.rpc.compress;
+
+/**
+ * 报文压缩, 可通过 RpcCompressorFactory.register 或 META-INF/services 扩展
+ *
+ * @author toby
+ */
+public interface RpcCompressor {
+
+    /**
+     * 压缩算法名称, 用于消息头及 @RpcClient、@RpcServer、simple-rpc.compression 配置
+     *
+     * @return 名称
+     */
+    String getName();
+
+    /**
+     * 压缩
+     *
+     * @param bytes 原始字节
+     * @return 压缩后字节
+     */
+    byte[] compress(byte[] bytes);
+
+    /**
+     * 解压, 报文损坏或解压后超过 maxLength 时抛出异常, 不能先按报文中声明的长度分配内存
+     *
+     * @param bytes     压缩后字节
+     * @param maxLength 解压后的最大字节数
+     * @return 原始字节
+     */
+    byte[] decompress(byte[] bytes, int maxLength);
+
+}
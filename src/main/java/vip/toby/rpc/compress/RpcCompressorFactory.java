@@ -0,0 +1,118 @@
+package vip.toby.rpc.compress;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.ClassUtils;
+import vip.toby.rpc.entity.RpcProtocol;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RpcCompressorFactory
+ *
+ * @author toby
+ */
+public final class RpcCompressorFactory {
+
+    /**
+     * 不压缩
+     */
+    public static final String NONE = "none";
+
+    /**
+     * 请求压缩: 收到服务端声明支持的回复后才压缩请求, ASYNC 没有回复, 不压缩请求
+     */
+    public static final String NEGOTIATE = "negotiate";
+
+    /**
+     * 请求压缩: 始终压缩, 需要所有服务端已升级
+     */
+    public static final String ALWAYS = "always";
+
+    private final static Map<String, RpcCompressor> COMPRESSOR_MAP = new ConcurrentHashMap<>();
+    private static volatile String acceptCompression = "";
+
+    static {
+        register(new GzipRpcCompressor());
+        // lz4-java 为可选依赖
+        if (ClassUtils.isPresent("net.jpountz.lz4.LZ4Factory", RpcCompressorFactory.class.getClassLoader())) {
+            register(new Lz4RpcCompressor());
+        }
+        for (RpcCompressor rpcCompressor : ServiceLoader.load(RpcCompressor.class)) {
+            register(rpcCompressor);
+        }
+    }
+
+    private RpcCompressorFactory() {
+    }
+
+    /**
+     * 注册压缩算法
+     */
+    public static synchronized void register(RpcCompressor rpcCompressor) {
+        COMPRESSOR_MAP.put(rpcCompressor.getName(), rpcCompressor);
+        acceptCompression = StringUtils.join(COMPRESSOR_MAP.keySet(), ",");
+    }
+
+    /**
+     * 通过名称获取压缩算法, none 或为空时返回 null
+     */
+    public static RpcCompressor getCompressor(String name) {
+        if (StringUtils.isBlank(name) || NONE.equals(name)) {
+            return null;
+        }
+        RpcCompressor rpcCompressor = COMPRESSOR_MAP.get(name);
+        if (rpcCompressor == null) {
+            throw new RuntimeException("Compressor: " + name + " 不存在" + (Lz4RpcCompressor.NAME.equals(name) ? ", 需要引入 org.lz4:lz4-java" : ""));
+        }
+        return rpcCompressor;
+    }
+
+    /**
+     * 本地支持的压缩算法, 逗号分隔, 随请求发送给服务端
+     */
+    public static String getAcceptCompression() {
+        return acceptCompression;
+    }
+
+    /**
+     * 对端是否支持该压缩算法
+     */
+    public static boolean isAccepted(Map<String, Object> headers, RpcCompressor rpcCompressor) {
+        Object accept = headers.get(RpcProtocol.ACCEPT_COMPRESSION_HEADER);
+        return accept != null && contains(accept.toString(), rpcCompressor.getName());
+    }
+
+    /**
+     * 超过阈值时压缩, 并在消息头中标明压缩算法
+     */
+    public static byte[] compress(RpcCompressor rpcCompressor, int threshold, Map<String, Object> headers, byte[] body) {
+        if (rpcCompressor == null || body.length < threshold) {
+            return body;
+        }
+        headers.put(RpcProtocol.COMPRESSION_HEADER, rpcCompressor.getName());
+        return rpcCompressor.compress(body);
+    }
+
+    /**
+     * 根据消息头解压, 未压缩时原样返回; 解压后超过 maxLength 时抛出异常
+     */
+    public static byte[] decompress(Map<String, Object> headers, byte[] body, int maxLength) {
+        Object compression = headers.get(RpcProtocol.COMPRESSION_HEADER);
+        if (compression == null) {
+            return body;
+        }
+        return getCompressor(compression.toString()).decompress(body, maxLength);
+    }
+
+    private static boolean contains(String accept, String name) {
+        for (String item : StringUtils.split(accept, ',')) {
+            if (name.equals(item.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,53 @@
+package vip.toby.rpc.entity;
+
+/**
+ * 报文协议常量
+ *
+ * @author toby
+ */
+public final class RpcProtocol {
+
+    /**
+     * 返回报文版本号, 版本 2 起 data 为内嵌对象而非 JSON 字符串
+     */
+    public static final int REPLY_VERSION = 2;
+
+    /**
+     * 请求消息头: 调用方法, 服务端可在解码前确定参数类型
+     */
+    public static final String COMMAND_HEADER = "x-simple-rpc-command";
+
+    /**
+     * 请求消息头: 批量调用, 报文为 [{"command","data"}] 数组, 返回报文的 data 为对应顺序的返回报文数组
+     */
+    public static final String BATCH_HEADER = "x-simple-rpc-batch";
+
+    /**
+     * 消息头: 报文的压缩算法, 不存在时未压缩
+     */
+    public static final String COMPRESSION_HEADER = "x-simple-rpc-compression";
+
+    /**
+     * 消息头: 支持解压的算法, 逗号分隔; 请求中由客户端声明, 服务端只在客户端支持时压缩返回报文; 回复中由服务端声明, 客户端据此开始压缩请求
+     */
+    public static final String ACCEPT_COMPRESSION_HEADER = "x-simple-rpc-accept-compression";
+
+    /**
+     * 请求消息头: 调用剩余的超时时间(毫秒), 相对值, 服务端从收到消息时开始计时, 超时后客户端已放弃等待, 服务端不再处理
+     */
+    public static final String TIMEOUT_HEADER = "x-simple-rpc-timeout";
+
+    /**
+     * 请求消息头: 客户端发送时间(毫秒时间戳), 仅在配置 simple-rpc.server-clock-skew 时用于扣除在队列中等待的时间
+     */
+    public static final String SENT_TIME_HEADER = "x-simple-rpc-sent-time";
+
+    /**
+     * 请求消息头: 幂等键, 对冲请求与原请求相同; 服务端以其代替 correlationId 做重复投递检测, 重复的一份不执行也不回复
+     */
+    public static final String IDEMPOTENCY_KEY_HEADER = "x-simple-rpc-idempotency-key";
+
+    private RpcProtocol() {
+    }
+
+}
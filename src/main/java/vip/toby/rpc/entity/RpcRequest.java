@@ -0,0 +1,29 @@
+package vip.toby.rpc.entity;
+
+/**
+ * 请求报文, 服务端按方法参数类型直接解码 data
+ *
+ * @author toby
+ */
+public class RpcRequest<T> {
+
+    private String command;
+    private T data;
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    public T getData() {
+        return data;
+    }
+
+    public void setData(T data) {
+        this.data = data;
+    }
+
+}
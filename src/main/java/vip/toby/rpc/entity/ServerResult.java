@@ -68,8 +68,10 @@ public class ServerResult {
         return errorCode;
     }
 
-    @Override
-    public String toString() {
+    /**
+     * 转换为JSONObject, 用于单次序列化的返回报文
+     */
+    public JSONObject toJSONObject() {
         JSONObject result = new JSONObject();
         result.put("status", this.operateStatus.getStatus());
         result.put("message", this.message);
@@ -78,7 +80,19 @@ public class ServerResult {
         } else {
             result.put("errorCode", this.errorCode);
         }
-        return result.toJSONString();
+        return result;
+    }
+
+    /**
+     * 从JSONObject还原
+     */
+    public static ServerResult parse(JSONObject serverResultJson) {
+        return build(OperateStatus.getOperateStatus(serverResultJson.getIntValue("status"))).message(serverResultJson.getString("message")).result(serverResultJson.get("result")).errorCode(serverResultJson.getIntValue("errorCode"));
+    }
+
+    @Override
+    public String toString() {
+        return toJSONObject().toJSONString();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,141 @@
+package vip.toby.rpc.log;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 访问日志写入, 多生产者单消费者无锁环形缓冲区, 所有 RpcAccessLogger 共用一个写日志线程
+ * <p>
+ * 调用线程只占位并放入记录, 从不阻塞; 缓冲区满时丢弃并计数
+ *
+ * @author toby
+ */
+class RpcAccessLogWriter implements Runnable {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RpcAccessLogWriter.class);
+
+    private final static long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private final static long CLOSE_TIMEOUT = 1000;
+
+    private static volatile RpcAccessLogWriter instance;
+
+    private final AtomicReferenceArray<RpcAccessLogger.Entry> slots;
+    private final int mask;
+    // 生产者占位序号
+    private final AtomicLong tail = new AtomicLong();
+    // 消费序号, 只由写日志线程修改
+    private volatile long head;
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile boolean closing;
+
+    private RpcAccessLogWriter(int bufferSize) {
+        int capacity = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * 首次调用时创建并启动写日志线程, 缓冲区大小向上取 2 的幂
+     */
+    static RpcAccessLogWriter getInstance(int bufferSize) {
+        if (instance == null) {
+            synchronized (RpcAccessLogWriter.class) {
+                if (instance == null) {
+                    RpcAccessLogWriter writer = new RpcAccessLogWriter(bufferSize);
+                    Thread thread = new Thread(writer, "simple-rpc-access-log");
+                    thread.setDaemon(true);
+                    thread.start();
+                    // 退出前写完缓冲区中的记录
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> writer.close(thread), "simple-rpc-access-log-shutdown"));
+                    instance = writer;
+                }
+            }
+        }
+        return instance;
+    }
+
+    static long getDroppedCount() {
+        RpcAccessLogWriter writer = instance;
+        return writer == null ? 0 : writer.droppedCount.sum();
+    }
+
+    boolean offer(RpcAccessLogger.Entry entry) {
+        while (true) {
+            long sequence = this.tail.get();
+            if (sequence - this.head >= this.slots.length()) {
+                this.droppedCount.increment();
+                return false;
+            }
+            if (this.tail.compareAndSet(sequence, sequence + 1)) {
+                this.slots.set((int) sequence & this.mask, entry);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        long reportedCount = 0;
+        while (true) {
+            boolean written = drain();
+            long droppedCount = this.droppedCount.sum();
+            if (droppedCount != reportedCount) {
+                LOGGER.warn("Access Log Dropped! Count: " + (droppedCount - reportedCount) + ", 可调大 simple-rpc.access-log-buffer-size 或调小 access-log-sample-percent");
+                reportedCount = droppedCount;
+            }
+            if (written) {
+                continue;
+            }
+            if (this.closing) {
+                return;
+            }
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+    }
+
+    /**
+     * 写出缓冲区中的记录, 每次最多一个缓冲区大小, 以便持续写满时也能报告丢弃数量; 没有记录时返回 false
+     */
+    private boolean drain() {
+        boolean written = false;
+        for (int i = 0; i < this.slots.length(); i++) {
+            long sequence = this.head;
+            int index = (int) sequence & this.mask;
+            RpcAccessLogger.Entry entry = this.slots.get(index);
+            if (entry == null) {
+                if (this.tail.get() == sequence) {
+                    return written;
+                }
+                // 已占位但还未放入记录
+                Thread.yield();
+                continue;
+            }
+            this.slots.lazySet(index, null);
+            this.head = sequence + 1;
+            try {
+                entry.write();
+            } catch (Exception e) {
+                LOGGER.error(e.getMessage(), e);
+            }
+            written = true;
+        }
+        return true;
+    }
+
+    private void close(Thread thread) {
+        this.closing = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
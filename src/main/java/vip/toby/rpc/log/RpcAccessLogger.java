@@ -0,0 +1,240 @@
+package vip.toby.rpc.log;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.entity.OperateStatus;
+import vip.toby.rpc.entity.RpcType;
+import vip.toby.rpc.entity.ServerStatus;
+import vip.toby.rpc.metrics.RpcMetrics;
+import vip.toby.rpc.properties.RpcProperties;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 访问日志, 每个 RpcClient、RpcServer 一个, 格式为 key=value
+ * <p>
+ * 调用失败记录 ERROR、慢调用记录 WARN, 均不采样; 其余按 access-log-sample-percent 采样, 服务端记录 INFO, 客户端记录 DEBUG,
+ * 与服务端的访问日志重复, 需要时单独开启 DEBUG
+ * 日志级别未开启或未被采样时不创建任何对象; 报文在写日志线程解码、脱敏、截断, 调用线程只放入环形缓冲区
+ *
+ * @author toby
+ */
+public final class RpcAccessLogger {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RpcAccessLogger.class);
+
+    private final static String REDACTED = "***";
+
+    private final String prefix;
+    private final int slowCallTime;
+    private final int samplePercent;
+    private final Level successLevel;
+    private final int maxPayloadLength;
+    private final Set<String> redactFields;
+    private final RpcAccessLogWriter writer;
+
+    /**
+     * @param side         client 或 server
+     * @param rpcType      调用类型
+     * @param rpcName      队列名称
+     * @param slowCallTime 慢调用时间(毫秒)
+     */
+    public RpcAccessLogger(String side, RpcType rpcType, String rpcName, int slowCallTime, RpcProperties rpcProperties) {
+        int samplePercent = rpcProperties.getAccessLogSamplePercent();
+        if (samplePercent < 0 || samplePercent > 100) {
+            throw new RuntimeException("simple-rpc.access-log-sample-percent 取值 0-100");
+        }
+        if (rpcProperties.getAccessLogBufferSize() < 1) {
+            throw new RuntimeException("simple-rpc.access-log-buffer-size 必须大于 0");
+        }
+        this.prefix = "side=" + side + " type=" + rpcType.getName() + " name=" + rpcName;
+        this.slowCallTime = slowCallTime;
+        this.samplePercent = samplePercent;
+        this.successLevel = RpcMetrics.CLIENT.equals(side) ? Level.DEBUG : Level.INFO;
+        this.maxPayloadLength = rpcProperties.getAccessLogMaxPayloadLength();
+        this.redactFields = parseRedactFields(rpcProperties.getAccessLogRedactFields());
+        this.writer = RpcAccessLogWriter.getInstance(rpcProperties.getAccessLogBufferSize());
+    }
+
+    /**
+     * 缓冲区满被丢弃的记录数量
+     */
+    public static long getDroppedCount() {
+        return RpcAccessLogWriter.getDroppedCount();
+    }
+
+    /**
+     * 记录一次调用, 报文在写日志线程格式化, 放入后不能再修改
+     *
+     * @param command       方法
+     * @param duration      耗时(毫秒)
+     * @param serverStatus  调用状态
+     * @param operateStatus 业务状态, 可为 null
+     * @param rpcCodec      报文编码
+     * @param request       请求报文, byte[] 按 rpcCodec 解码, 其他对象直接序列化, 可为 null
+     * @param response      返回报文, 同上
+     */
+    public void log(String command, long duration, ServerStatus serverStatus, OperateStatus operateStatus, RpcCodec rpcCodec, Object request, Object response) {
+        Level level;
+        if (serverStatus != ServerStatus.SUCCESS) {
+            if (!LOGGER.isErrorEnabled()) {
+                return;
+            }
+            level = Level.ERROR;
+        } else if (duration > this.slowCallTime) {
+            if (!LOGGER.isWarnEnabled()) {
+                return;
+            }
+            level = Level.WARN;
+        } else {
+            if (!(this.successLevel == Level.DEBUG ? LOGGER.isDebugEnabled() : LOGGER.isInfoEnabled()) || !sampled()) {
+                return;
+            }
+            level = this.successLevel;
+        }
+        this.writer.offer(new Entry(this, level, command, duration, serverStatus, operateStatus, rpcCodec, request, response));
+    }
+
+    /**
+     * 在调用线程格式化报文, 用于异常日志, 同样脱敏、截断
+     */
+    public String format(RpcCodec rpcCodec, Object payload) {
+        String text = formatPayload(rpcCodec, payload);
+        return text == null ? "" : text;
+    }
+
+    private boolean sampled() {
+        return this.samplePercent >= 100 || (this.samplePercent > 0 && ThreadLocalRandom.current().nextInt(100) < this.samplePercent);
+    }
+
+    /**
+     * 解码、脱敏并截断报文, 不记录报文时返回 null
+     */
+    private String formatPayload(RpcCodec rpcCodec, Object payload) {
+        if (payload == null || this.maxPayloadLength <= 0) {
+            return null;
+        }
+        String text;
+        try {
+            if (this.redactFields.isEmpty()) {
+                text = payload instanceof byte[] ? rpcCodec.toString((byte[]) payload) : JSON.toJSONString(payload);
+            } else {
+                text = JSON.toJSONString(redact(payload instanceof byte[] ? rpcCodec.decode((byte[]) payload, Object.class) : JSON.toJSON(payload)));
+            }
+        } catch (Exception e) {
+            // 不输出无法解析的原始报文, 避免泄露需要脱敏的字段
+            return payload instanceof byte[] ? "<" + ((byte[]) payload).length + " bytes>" : "<unreadable>";
+        }
+        if (text.length() <= this.maxPayloadLength) {
+            return text;
+        }
+        return text.substring(0, this.maxPayloadLength) + "...(" + text.length() + ")";
+    }
+
+    /**
+     * 复制并替换需要脱敏的字段, 不修改原对象
+     */
+    private Object redact(Object object) {
+        if (object instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) object;
+            JSONObject copy = new JSONObject(map.size(), true);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                copy.put(key, this.redactFields.contains(key.toLowerCase(Locale.ROOT)) ? REDACTED : redact(entry.getValue()));
+            }
+            return copy;
+        }
+        if (object instanceof Collection) {
+            Collection<?> collection = (Collection<?>) object;
+            JSONArray copy = new JSONArray(collection.size());
+            for (Object element : collection) {
+                copy.add(redact(element));
+            }
+            return copy;
+        }
+        return object;
+    }
+
+    private static Set<String> parseRedactFields(String redactFields) {
+        if (StringUtils.isBlank(redactFields)) {
+            return Collections.emptySet();
+        }
+        Set<String> fields = new HashSet<>();
+        for (String field : redactFields.split(",")) {
+            if (StringUtils.isNotBlank(field)) {
+                fields.add(field.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * 一条访问日志, 在写日志线程格式化
+     */
+    static class Entry {
+
+        private final RpcAccessLogger accessLogger;
+        private final Level level;
+        private final String command;
+        private final long duration;
+        private final ServerStatus serverStatus;
+        private final OperateStatus operateStatus;
+        private final RpcCodec rpcCodec;
+        private final Object request;
+        private final Object response;
+
+        private Entry(RpcAccessLogger accessLogger, Level level, String command, long duration, ServerStatus serverStatus, OperateStatus operateStatus, RpcCodec rpcCodec, Object request, Object response) {
+            this.accessLogger = accessLogger;
+            this.level = level;
+            this.command = command;
+            this.duration = duration;
+            this.serverStatus = serverStatus;
+            this.operateStatus = operateStatus;
+            this.rpcCodec = rpcCodec;
+            this.request = request;
+            this.response = response;
+        }
+
+        void write() {
+            StringBuilder builder = new StringBuilder(256).append(this.accessLogger.prefix).append(" command=").append(this.command).append(" status=").append(this.serverStatus.name());
+            if (this.operateStatus != null) {
+                builder.append(" operate=").append(this.operateStatus.name());
+            }
+            builder.append(" duration=").append(this.duration).append("ms");
+            String request = this.accessLogger.formatPayload(this.rpcCodec, this.request);
+            if (request != null) {
+                builder.append(" request=").append(request);
+            }
+            String response = this.accessLogger.formatPayload(this.rpcCodec, this.response);
+            if (response != null) {
+                builder.append(" response=").append(response);
+            }
+            switch (this.level) {
+                case ERROR:
+                    LOGGER.error(builder.toString());
+                    break;
+                case WARN:
+                    LOGGER.warn(builder.toString());
+                    break;
+                case DEBUG:
+                    LOGGER.debug(builder.toString());
+                    break;
+                default:
+                    LOGGER.info(builder.toString());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package vip.toby.rpc.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.context.ConfigurableApplicationContext;
+import vip.toby.rpc.entity.OperateStatus;
+import vip.toby.rpc.entity.RpcType;
+import vip.toby.rpc.entity.ServerStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToLongFunction;
+
+/**
+ * Micrometer 指标, 仅在引入 micrometer-core 时加载
+ * <p>
+ * simple.rpc.{side}.calls: 耗时, 带百分位直方图
+ * simple.rpc.{side}.results: 按 status、operate 计数
+ * simple.rpc.{side}.in.flight: 在途数量
+ * simple.rpc.{side}.request.size、simple.rpc.{side}.response.size: 报文字节数, 按 256B-1MB 固定桶分布
+ * simple.rpc.server.validation.failures: 参数校验不通过数量
+ * simple.rpc.server.expired: 超时被丢弃的调用数量
+ * simple.rpc.server.idempotent.duplicates、simple.rpc.server.idempotent.evictions: 内置幂等拦截器的拦截及覆盖数量, 按 kind(rpc、data) 区分拦截
+ * simple.rpc.client.circuit.breaker.rejected、simple.rpc.client.circuit.breaker.opened: 熔断拒绝及打开次数
+ * <p>
+ * 公共标签 type、name、command
+ * <p>
+ * 由 RpcMetricsFactory 注册为 Spring Bean(rpcMicrometerMetrics), 同一上下文的 RpcClient、RpcServer 共用, 随上下文释放
+ *
+ * @author toby
+ */
+class MicrometerRpcMetrics implements RpcMetrics {
+
+    private final static String NONE = "NONE";
+    // 每个 ServerStatus 对应的计数器数量, 最后一个为无业务状态
+    private final static int OPERATE_COLUMNS = OperateStatus.values().length + 1;
+    // 报文大小使用固定桶, 比百分位直方图记录更快、时间序列更少
+    private final static double[] SIZE_BUCKETS = {256, 1024, 4096, 16384, 65536, 262144, 1048576};
+    private final static String BEAN_NAME = "rpcMicrometerMetrics";
+    private final MeterRegistry meterRegistry;
+    // 同名方法(别名)共用记录器, 在途数量 Gauge 只能注册一次
+    private final Map<String, RpcMethodMetrics> methodMetricsMap = new ConcurrentHashMap<>();
+
+    MicrometerRpcMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 获取或注册当前上下文的实例, 不存在 MeterRegistry Bean 时返回 NOOP
+     */
+    static RpcMetrics create(BeanFactory beanFactory) {
+        MeterRegistry meterRegistry = beanFactory.getBeanProvider(MeterRegistry.class).getIfAvailable();
+        if (meterRegistry == null) {
+            return RpcMetrics.NOOP;
+        }
+        BeanDefinitionRegistry beanDefinitionRegistry = (BeanDefinitionRegistry) (beanFactory instanceof ConfigurableApplicationContext ? ((ConfigurableApplicationContext) beanFactory).getBeanFactory() : beanFactory);
+        if (!beanDefinitionRegistry.isBeanNameInUse(BEAN_NAME)) {
+            beanDefinitionRegistry.registerBeanDefinition(BEAN_NAME, BeanDefinitionBuilder.genericBeanDefinition(MicrometerRpcMetrics.class).addConstructorArgValue(meterRegistry).getRawBeanDefinition());
+        }
+        return beanFactory.getBean(BEAN_NAME, RpcMetrics.class);
+    }
+
+    @Override
+    public RpcMethodMetrics method(String side, RpcType rpcType, String rpcName, String command) {
+        return this.methodMetricsMap.computeIfAbsent(side + ":" + rpcType.getName() + ":" + rpcName + ":" + command, key -> new MethodMetrics(side, Tags.of("type", rpcType.getName(), "name", rpcName, "command", command)));
+    }
+
+    @Override
+    public <S> void counter(String name, S state, ToLongFunction<S> count, String... tags) {
+        // 同名同标签重复注册返回已有的 FunctionCounter, state 只持有弱引用
+        FunctionCounter.builder("simple.rpc." + name, state, value -> count.applyAsLong(value)).tags(tags).register(this.meterRegistry);
+    }
+
+    private class MethodMetrics implements RpcMethodMetrics {
+
+        private final String prefix;
+        private final Tags tags;
+        private final Timer timer;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final DistributionSummary requestSize;
+        private final DistributionSummary responseSize;
+        private final Counter validationFailures;
+        // 按 ServerStatus、OperateStatus 序号懒加载的计数器
+        private final AtomicReferenceArray<Counter> results = new AtomicReferenceArray<>(ServerStatus.values().length * OPERATE_COLUMNS);
+
+        private MethodMetrics(String side, Tags tags) {
+            String prefix = "simple.rpc." + side + ".";
+            this.prefix = prefix;
+            this.tags = tags;
+            this.timer = Timer.builder(prefix + "calls").tags(tags).publishPercentileHistogram().register(meterRegistry);
+            Gauge.builder(prefix + "in.flight", this.inFlight, AtomicInteger::get).tags(tags).register(meterRegistry);
+            this.requestSize = DistributionSummary.builder(prefix + "request.size").baseUnit("bytes").tags(tags).serviceLevelObjectives(SIZE_BUCKETS).register(meterRegistry);
+            this.responseSize = DistributionSummary.builder(prefix + "response.size").baseUnit("bytes").tags(tags).serviceLevelObjectives(SIZE_BUCKETS).register(meterRegistry);
+            this.validationFailures = SERVER.equals(side) ? Counter.builder(prefix + "validation.failures").tags(tags).register(meterRegistry) : null;
+        }
+
+        @Override
+        public long start() {
+            this.inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        @Override
+        public void stop(long start, ServerStatus serverStatus, OperateStatus operateStatus) {
+            this.inFlight.decrementAndGet();
+            this.timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            int index = serverStatus.ordinal() * OPERATE_COLUMNS + (operateStatus == null ? OPERATE_COLUMNS - 1 : operateStatus.ordinal());
+            Counter counter = this.results.get(index);
+            if (counter == null) {
+                // 并发时重复注册返回同一个 Counter
+                counter = Counter.builder(this.prefix + "results").tags(this.tags).tag("status", serverStatus.name()).tag("operate", operateStatus == null ? NONE : operateStatus.name()).register(meterRegistry);
+                this.results.set(index, counter);
+            }
+            counter.increment();
+        }
+
+        @Override
+        public void requestSize(int bytes) {
+            this.requestSize.record(bytes);
+        }
+
+        @Override
+        public void responseSize(int bytes) {
+            this.responseSize.record(bytes);
+        }
+
+        @Override
+        public void validationFailure() {
+            if (this.validationFailures != null) {
+                this.validationFailures.increment();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package vip.toby.rpc.metrics;
+
+import vip.toby.rpc.entity.OperateStatus;
+import vip.toby.rpc.entity.ServerStatus;
+
+/**
+ * 单个方法的指标记录器, 启动时为每个方法创建一次, 调用时不再按标签查找
+ *
+ * @author toby
+ */
+public interface RpcMethodMetrics {
+
+    RpcMethodMetrics NOOP = new RpcMethodMetrics() {
+        @Override
+        public long start() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void stop(long start, ServerStatus serverStatus, OperateStatus operateStatus) {
+        }
+
+        @Override
+        public void requestSize(int bytes) {
+        }
+
+        @Override
+        public void responseSize(int bytes) {
+        }
+
+        @Override
+        public void validationFailure() {
+        }
+    };
+
+    /**
+     * 调用开始, 在途数量加一
+     *
+     * @return 开始时间(纳秒), 传给 stop
+     */
+    long start();
+
+    /**
+     * 调用结束, 在途数量减一, 记录耗时及结果
+     *
+     * @param start         start 的返回值
+     * @param serverStatus  调用状态
+     * @param operateStatus 业务状态, 调用未成功时为 null
+     */
+    void stop(long start, ServerStatus serverStatus, OperateStatus operateStatus);
+
+    /**
+     * 请求报文字节数
+     */
+    void requestSize(int bytes);
+
+    /**
+     * 返回报文字节数
+     */
+    void responseSize(int bytes);
+
+    /**
+     * 参数校验不通过
+     */
+    void validationFailure();
+
+}
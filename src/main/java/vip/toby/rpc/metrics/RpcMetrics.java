@@ -0,0 +1,41 @@
+package vip.toby.rpc.metrics;
+
+import vip.toby.rpc.entity.RpcType;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * 指标, 按 client/server、RpcType、rpcName、command 创建方法记录器
+ *
+ * @author toby
+ */
+public interface RpcMetrics {
+
+    String CLIENT = "client";
+
+    String SERVER = "server";
+
+    RpcMetrics NOOP = (side, rpcType, rpcName, command) -> RpcMethodMetrics.NOOP;
+
+    /**
+     * 创建方法记录器
+     *
+     * @param side    client 或 server
+     * @param rpcType 调用类型
+     * @param rpcName 队列名称
+     * @param command 方法
+     */
+    RpcMethodMetrics method(String side, RpcType rpcType, String rpcName, String command);
+
+    /**
+     * 注册由组件自行累计的计数(如过期丢弃、幂等拦截、熔断拒绝), 由指标系统读取时调用 count; 默认不记录
+     *
+     * @param name  指标名称, 如 server.expired
+     * @param state 计数所属对象, 指标系统可以只持有其弱引用
+     * @param count 读取当前累计值
+     * @param tags  标签, 按 key、value 交替
+     */
+    default <S> void counter(String name, S state, ToLongFunction<S> count, String... tags) {
+    }
+
+}
@@ -0,0 +1,37 @@
+package vip.toby.rpc.metrics;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.util.ClassUtils;
+import vip.toby.rpc.properties.RpcProperties;
+
+/**
+ * RpcMetrics 工厂
+ * <p>
+ * 优先使用声明的 RpcMetrics Bean; 否则在引入 micrometer-core 且存在 MeterRegistry Bean 时使用 Micrometer, 都不满足时不记录
+ * <p>
+ * Micrometer 实例注册为当前上下文的 Bean, 不在静态变量中持有 MeterRegistry
+ *
+ * @author toby
+ */
+public final class RpcMetricsFactory {
+
+    private final static boolean MICROMETER_PRESENT = ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", RpcMetricsFactory.class.getClassLoader());
+
+    private RpcMetricsFactory() {
+    }
+
+    public static RpcMetrics getRpcMetrics(BeanFactory beanFactory, RpcProperties rpcProperties) {
+        if (!"true".equals(rpcProperties.getMetricsEnabled())) {
+            return RpcMetrics.NOOP;
+        }
+        RpcMetrics rpcMetrics = beanFactory.getBeanProvider(RpcMetrics.class).getIfAvailable();
+        if (rpcMetrics != null) {
+            return rpcMetrics;
+        }
+        if (MICROMETER_PRESENT) {
+            return MicrometerRpcMetrics.create(beanFactory);
+        }
+        return RpcMetrics.NOOP;
+    }
+
+}
@@ -12,8 +12,78 @@ public class RpcProperties {
 
     private Integer serverSlowCallTime;
 
+    private Integer serverClockSkew;
+
     private String validatorFailFast;
 
+    private String codec;
+
+    private String serverExecutor;
+
+    private Integer serverExecutorThreads;
+
+    private Integer serverExecutorQueueCapacity;
+
+    private Integer serverPrefetchCount;
+
+    private Integer serverAckBatchSize;
+
+    private Integer serverAckBatchTime;
+
+    private Integer clientBatchMaxBytes;
+
+    private Integer clientBatchLinger;
+
+    private String compression;
+
+    private Integer compressionThreshold;
+
+    private Integer compressionMaxSize;
+
+    private String clientRequestCompression;
+
+    private String clientReplyMode;
+
+    private Integer clientCallbackThreads;
+
+    private Integer clientSendThreads;
+
+    private Integer serverIdempotentWindow;
+
+    private Integer serverIdempotentCapacity;
+
+    private Integer clientCircuitBreakerFailureRate;
+
+    private Integer clientCircuitBreakerMinimumCalls;
+
+    private Integer clientCircuitBreakerWindow;
+
+    private Integer clientCircuitBreakerOpenTime;
+
+    private Integer clientCircuitBreakerHalfOpenCalls;
+
+    private Integer clientRetryInitialInterval;
+
+    private Integer clientRetryMultiplier;
+
+    private Integer clientRetryMaxInterval;
+
+    private Integer clientRetryBudgetPercent;
+
+    private Integer clientHedgeBudgetPercent;
+
+    private Integer clientHedgeMinDelay;
+
+    private String metricsEnabled;
+
+    private Integer accessLogSamplePercent;
+
+    private Integer accessLogMaxPayloadLength;
+
+    private String accessLogRedactFields;
+
+    private Integer accessLogBufferSize;
+
     public int getClientSlowCallTime() {
         if (this.clientSlowCallTime == null) {
             return 1000;
@@ -28,6 +98,13 @@ public class RpcProperties {
         return this.serverSlowCallTime;
     }
 
+    public int getServerClockSkew() {
+        if (this.serverClockSkew == null) {
+            return -1;
+        }
+        return this.serverClockSkew;
+    }
+
     public String getValidatorFailFast() {
         if (StringUtils.isBlank(this.validatorFailFast)) {
             return "true";
@@ -35,6 +112,244 @@ public class RpcProperties {
         return validatorFailFast;
     }
 
+    public String getCodec() {
+        if (StringUtils.isBlank(this.codec)) {
+            return "json";
+        }
+        return this.codec;
+    }
+
+    public String getServerExecutor() {
+        if (StringUtils.isBlank(this.serverExecutor)) {
+            return "none";
+        }
+        return this.serverExecutor;
+    }
+
+    public int getServerExecutorThreads() {
+        if (this.serverExecutorThreads == null) {
+            return Runtime.getRuntime().availableProcessors() * 2;
+        }
+        return this.serverExecutorThreads;
+    }
+
+    public int getServerExecutorQueueCapacity() {
+        if (this.serverExecutorQueueCapacity == null) {
+            return 1024;
+        }
+        return this.serverExecutorQueueCapacity;
+    }
+
+    public int getServerPrefetchCount() {
+        if (this.serverPrefetchCount == null) {
+            return 0;
+        }
+        return this.serverPrefetchCount;
+    }
+
+    public int getServerAckBatchSize() {
+        if (this.serverAckBatchSize == null) {
+            return 1;
+        }
+        return this.serverAckBatchSize;
+    }
+
+    public int getServerAckBatchTime() {
+        if (this.serverAckBatchTime == null) {
+            return 100;
+        }
+        return this.serverAckBatchTime;
+    }
+
+    public int getClientBatchMaxBytes() {
+        if (this.clientBatchMaxBytes == null) {
+            return 256 * 1024;
+        }
+        return this.clientBatchMaxBytes;
+    }
+
+    public int getClientBatchLinger() {
+        if (this.clientBatchLinger == null) {
+            return 5;
+        }
+        return this.clientBatchLinger;
+    }
+
+    public String getCompression() {
+        if (StringUtils.isBlank(this.compression)) {
+            return "none";
+        }
+        return this.compression;
+    }
+
+    public int getCompressionThreshold() {
+        if (this.compressionThreshold == null) {
+            return 8192;
+        }
+        return this.compressionThreshold;
+    }
+
+    public int getCompressionMaxSize() {
+        if (this.compressionMaxSize == null) {
+            return 67108864;
+        }
+        return this.compressionMaxSize;
+    }
+
+    public String getClientRequestCompression() {
+        if (StringUtils.isBlank(this.clientRequestCompression)) {
+            return "negotiate";
+        }
+        return this.clientRequestCompression;
+    }
+
+    public String getClientReplyMode() {
+        if (StringUtils.isBlank(this.clientReplyMode)) {
+            return "queue";
+        }
+        return this.clientReplyMode;
+    }
+
+    public int getClientCallbackThreads() {
+        if (this.clientCallbackThreads == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return this.clientCallbackThreads;
+    }
+
+    public int getClientSendThreads() {
+        if (this.clientSendThreads == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return this.clientSendThreads;
+    }
+
+    public int getServerIdempotentWindow() {
+        if (this.serverIdempotentWindow == null) {
+            return 0;
+        }
+        return this.serverIdempotentWindow;
+    }
+
+    public int getServerIdempotentCapacity() {
+        if (this.serverIdempotentCapacity == null) {
+            return 65536;
+        }
+        return this.serverIdempotentCapacity;
+    }
+
+    public int getClientCircuitBreakerFailureRate() {
+        if (this.clientCircuitBreakerFailureRate == null) {
+            return 50;
+        }
+        return this.clientCircuitBreakerFailureRate;
+    }
+
+    public int getClientCircuitBreakerMinimumCalls() {
+        if (this.clientCircuitBreakerMinimumCalls == null) {
+            return 20;
+        }
+        return this.clientCircuitBreakerMinimumCalls;
+    }
+
+    public int getClientCircuitBreakerWindow() {
+        if (this.clientCircuitBreakerWindow == null) {
+            return 10000;
+        }
+        return this.clientCircuitBreakerWindow;
+    }
+
+    public int getClientCircuitBreakerOpenTime() {
+        if (this.clientCircuitBreakerOpenTime == null) {
+            return 5000;
+        }
+        return this.clientCircuitBreakerOpenTime;
+    }
+
+    public int getClientCircuitBreakerHalfOpenCalls() {
+        if (this.clientCircuitBreakerHalfOpenCalls == null) {
+            return 5;
+        }
+        return this.clientCircuitBreakerHalfOpenCalls;
+    }
+
+    public int getClientRetryInitialInterval() {
+        if (this.clientRetryInitialInterval == null) {
+            return 100;
+        }
+        return this.clientRetryInitialInterval;
+    }
+
+    public int getClientRetryMultiplier() {
+        if (this.clientRetryMultiplier == null) {
+            return 2;
+        }
+        return this.clientRetryMultiplier;
+    }
+
+    public int getClientRetryMaxInterval() {
+        if (this.clientRetryMaxInterval == null) {
+            return 2000;
+        }
+        return this.clientRetryMaxInterval;
+    }
+
+    public int getClientRetryBudgetPercent() {
+        if (this.clientRetryBudgetPercent == null) {
+            return 10;
+        }
+        return this.clientRetryBudgetPercent;
+    }
+
+    public int getClientHedgeBudgetPercent() {
+        if (this.clientHedgeBudgetPercent == null) {
+            return 5;
+        }
+        return this.clientHedgeBudgetPercent;
+    }
+
+    public int getClientHedgeMinDelay() {
+        if (this.clientHedgeMinDelay == null) {
+            return 5;
+        }
+        return this.clientHedgeMinDelay;
+    }
+
+    public String getMetricsEnabled() {
+        if (StringUtils.isBlank(this.metricsEnabled)) {
+            return "true";
+        }
+        return this.metricsEnabled;
+    }
+
+    public int getAccessLogSamplePercent() {
+        if (this.accessLogSamplePercent == null) {
+            return 100;
+        }
+        return this.accessLogSamplePercent;
+    }
+
+    public int getAccessLogMaxPayloadLength() {
+        if (this.accessLogMaxPayloadLength == null) {
+            return 1024;
+        }
+        return this.accessLogMaxPayloadLength;
+    }
+
+    public String getAccessLogRedactFields() {
+        if (StringUtils.isBlank(this.accessLogRedactFields)) {
+            return "";
+        }
+        return this.accessLogRedactFields;
+    }
+
+    public int getAccessLogBufferSize() {
+        if (this.accessLogBufferSize == null) {
+            return 8192;
+        }
+        return this.accessLogBufferSize;
+    }
+
     public void setClientSlowCallTime(Integer clientSlowCallTime) {
         this.clientSlowCallTime = clientSlowCallTime;
     }
@@ -43,8 +358,148 @@ public class RpcProperties {
         this.serverSlowCallTime = serverSlowCallTime;
     }
 
+    public void setServerClockSkew(Integer serverClockSkew) {
+        this.serverClockSkew = serverClockSkew;
+    }
+
     public void setValidatorFailFast(String validatorFailFast) {
         this.validatorFailFast = validatorFailFast;
     }
 
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public void setServerExecutor(String serverExecutor) {
+        this.serverExecutor = serverExecutor;
+    }
+
+    public void setServerExecutorThreads(Integer serverExecutorThreads) {
+        this.serverExecutorThreads = serverExecutorThreads;
+    }
+
+    public void setServerExecutorQueueCapacity(Integer serverExecutorQueueCapacity) {
+        this.serverExecutorQueueCapacity = serverExecutorQueueCapacity;
+    }
+
+    public void setServerPrefetchCount(Integer serverPrefetchCount) {
+        this.serverPrefetchCount = serverPrefetchCount;
+    }
+
+    public void setServerAckBatchSize(Integer serverAckBatchSize) {
+        this.serverAckBatchSize = serverAckBatchSize;
+    }
+
+    public void setServerAckBatchTime(Integer serverAckBatchTime) {
+        this.serverAckBatchTime = serverAckBatchTime;
+    }
+
+    public void setClientBatchMaxBytes(Integer clientBatchMaxBytes) {
+        this.clientBatchMaxBytes = clientBatchMaxBytes;
+    }
+
+    public void setClientBatchLinger(Integer clientBatchLinger) {
+        this.clientBatchLinger = clientBatchLinger;
+    }
+
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public void setCompressionThreshold(Integer compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public void setCompressionMaxSize(Integer compressionMaxSize) {
+        this.compressionMaxSize = compressionMaxSize;
+    }
+
+    public void setClientRequestCompression(String clientRequestCompression) {
+        this.clientRequestCompression = clientRequestCompression;
+    }
+
+    public void setClientReplyMode(String clientReplyMode) {
+        this.clientReplyMode = clientReplyMode;
+    }
+
+    public void setClientCallbackThreads(Integer clientCallbackThreads) {
+        this.clientCallbackThreads = clientCallbackThreads;
+    }
+
+    public void setClientSendThreads(Integer clientSendThreads) {
+        this.clientSendThreads = clientSendThreads;
+    }
+
+    public void setServerIdempotentWindow(Integer serverIdempotentWindow) {
+        this.serverIdempotentWindow = serverIdempotentWindow;
+    }
+
+    public void setServerIdempotentCapacity(Integer serverIdempotentCapacity) {
+        this.serverIdempotentCapacity = serverIdempotentCapacity;
+    }
+
+    public void setClientCircuitBreakerFailureRate(Integer clientCircuitBreakerFailureRate) {
+        this.clientCircuitBreakerFailureRate = clientCircuitBreakerFailureRate;
+    }
+
+    public void setClientCircuitBreakerMinimumCalls(Integer clientCircuitBreakerMinimumCalls) {
+        this.clientCircuitBreakerMinimumCalls = clientCircuitBreakerMinimumCalls;
+    }
+
+    public void setClientCircuitBreakerWindow(Integer clientCircuitBreakerWindow) {
+        this.clientCircuitBreakerWindow = clientCircuitBreakerWindow;
+    }
+
+    public void setClientCircuitBreakerOpenTime(Integer clientCircuitBreakerOpenTime) {
+        this.clientCircuitBreakerOpenTime = clientCircuitBreakerOpenTime;
+    }
+
+    public void setClientCircuitBreakerHalfOpenCalls(Integer clientCircuitBreakerHalfOpenCalls) {
+        this.clientCircuitBreakerHalfOpenCalls = clientCircuitBreakerHalfOpenCalls;
+    }
+
+    public void setClientRetryInitialInterval(Integer clientRetryInitialInterval) {
+        this.clientRetryInitialInterval = clientRetryInitialInterval;
+    }
+
+    public void setClientRetryMultiplier(Integer clientRetryMultiplier) {
+        this.clientRetryMultiplier = clientRetryMultiplier;
+    }
+
+    public void setClientRetryMaxInterval(Integer clientRetryMaxInterval) {
+        this.clientRetryMaxInterval = clientRetryMaxInterval;
+    }
+
+    public void setClientRetryBudgetPercent(Integer clientRetryBudgetPercent) {
+        this.clientRetryBudgetPercent = clientRetryBudgetPercent;
+    }
+
+    public void setClientHedgeBudgetPercent(Integer clientHedgeBudgetPercent) {
+        this.clientHedgeBudgetPercent = clientHedgeBudgetPercent;
+    }
+
+    public void setClientHedgeMinDelay(Integer clientHedgeMinDelay) {
+        this.clientHedgeMinDelay = clientHedgeMinDelay;
+    }
+
+    public void setMetricsEnabled(String metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    public void setAccessLogSamplePercent(Integer accessLogSamplePercent) {
+        this.accessLogSamplePercent = accessLogSamplePercent;
+    }
+
+    public void setAccessLogMaxPayloadLength(Integer accessLogMaxPayloadLength) {
+        this.accessLogMaxPayloadLength = accessLogMaxPayloadLength;
+    }
+
+    public void setAccessLogRedactFields(String accessLogRedactFields) {
+        this.accessLogRedactFields = accessLogRedactFields;
+    }
+
+    public void setAccessLogBufferSize(Integer accessLogBufferSize) {
+        this.accessLogBufferSize = accessLogBufferSize;
+    }
+
 }
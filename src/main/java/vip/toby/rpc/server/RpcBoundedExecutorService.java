@@ -0,0 +1,71 @@
+package vip.toby.rpc.server;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限制在途任务数量的线程池包装, 用于本身无界的 fork-join、virtual 线程池; 超出时抛出 RejectedExecutionException, 与 fixed 队列满时一致
+ *
+ * @author toby
+ */
+final class RpcBoundedExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final int maxInFlight;
+    private final Semaphore permits;
+
+    RpcBoundedExecutorService(ExecutorService delegate, int maxInFlight) {
+        this.delegate = delegate;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!this.permits.tryAcquire()) {
+            throw new RejectedExecutionException("在途任务已达上限: " + this.maxInFlight);
+        }
+        try {
+            this.delegate.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    this.permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        this.delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return this.delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.delegate.awaitTermination(timeout, unit);
+    }
+
+}
@@ -0,0 +1,207 @@
+package vip.toby.rpc.server;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.JavaBeanSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.util.FieldInfo;
+import com.alibaba.fastjson.util.TypeUtils;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 幂等存储, 记录时间窗口内出现过的 64 位指纹
+ * <p>
+ * 分段开放寻址表, 每段只有两个 long 数组, 初始化后不再分配内存; 容量满时覆盖探测范围内最旧的记录
+ *
+ * @author toby
+ */
+class RpcIdempotentStore {
+
+    private final static int SEGMENTS = 16;
+    private final static int MAX_PROBE = 8;
+    private final static FieldInfo[] NOT_BEAN_GETTERS = new FieldInfo[0];
+    private final static Map<Class<?>, FieldInfo[]> BEAN_GETTERS_MAP = new ConcurrentHashMap<>();
+
+    private final Segment[] segments;
+    private final long windowNanos;
+    private final LongAdder evictionCount = new LongAdder();
+
+    RpcIdempotentStore(long window, int capacity) {
+        if (window < 1 || capacity < 1) {
+            throw new RuntimeException("RpcIdempotentStore window 和 capacity 必须大于 0");
+        }
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+        int segmentCapacity = Math.max(MAX_PROBE, tableSizeFor((capacity + SEGMENTS - 1) / SEGMENTS));
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * 记录指纹, 窗口内已存在时返回 true
+     */
+    boolean isDuplicate(long fingerprint) {
+        // 0 表示空槽
+        long key = fingerprint == 0 ? 1 : fingerprint;
+        // 高位选段, 低位定位槽
+        return this.segments[(int) (key >>> 60) & (SEGMENTS - 1)].isDuplicate(key, System.nanoTime());
+    }
+
+    long getEvictionCount() {
+        return this.evictionCount.sum();
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(1, capacity - 1));
+        return n < 0 ? 1 : n + 1;
+    }
+
+    /**
+     * 64 位哈希, Map 与顺序无关, 字符串逐字符计算, 不分配内存
+     * <p>
+     * JavaBean 按缓存的 getter 逐个字段计算, 与解码后的等价 JSONObject 结果相同, 只有基本类型字段装箱及集合迭代器会分配对象; 数组等其他对象先转换为 JSON 结构
+     */
+    static long hash(Object value) {
+        if (value == null) {
+            return 0x9E3779B97F4A7C15L;
+        }
+        if (value instanceof CharSequence) {
+            CharSequence charSequence = (CharSequence) value;
+            long h = 0xCBF29CE484222325L;
+            for (int i = 0; i < charSequence.length(); i++) {
+                h = (h ^ charSequence.charAt(i)) * 0x100000001B3L;
+            }
+            return mix(h);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return mix(((Number) value).longValue() + 0x632BE59BD9B4E019L);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return mix(Double.doubleToLongBits(((Number) value).doubleValue()) + 0x8CB92BA72F3D8DD7L);
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 0x5851F42D4C957F2DL : 0x14057B7EF767814FL;
+        }
+        if (value instanceof Map) {
+            long h = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                // 求和与顺序无关
+                h += mix(hash(entry.getKey()) * 31 + hash(entry.getValue()));
+            }
+            return mix(h ^ ((Map<?, ?>) value).size());
+        }
+        if (value instanceof Collection) {
+            long h = 1;
+            for (Object element : (Collection<?>) value) {
+                h = h * 31 + hash(element);
+            }
+            return mix(h);
+        }
+        if (value instanceof Number) {
+            return hash(value.toString());
+        }
+        if (value instanceof Date) {
+            // 与 JSON 中的时间戳一致
+            return mix(((Date) value).getTime() + 0x632BE59BD9B4E019L);
+        }
+        if (value instanceof Enum) {
+            return hash(((Enum<?>) value).name());
+        }
+        FieldInfo[] getters = getBeanGetters(value.getClass());
+        if (getters != NOT_BEAN_GETTERS) {
+            // 与 JSON.toJSON 一致, 忽略 null 字段
+            long h = 0;
+            int size = 0;
+            for (FieldInfo getter : getters) {
+                Object fieldValue;
+                try {
+                    fieldValue = getter.get(value);
+                } catch (Exception e) {
+                    throw new RuntimeException("计算幂等指纹失败, Class: " + value.getClass().getName() + ", Field: " + getter.name, e);
+                }
+                if (fieldValue != null) {
+                    h += mix(hash(getter.name) * 31 + hash(fieldValue));
+                    size++;
+                }
+            }
+            return mix(h ^ size);
+        }
+        Object json = JSON.toJSON(value);
+        return json == value ? hash(value.toString()) : hash(json);
+    }
+
+    /**
+     * JavaBean 的 getter, 非 JavaBean 返回 NOT_BEAN_GETTERS
+     */
+    private static FieldInfo[] getBeanGetters(Class<?> clazz) {
+        return BEAN_GETTERS_MAP.computeIfAbsent(clazz, k -> {
+            if (!(SerializeConfig.getGlobalInstance().getObjectWriter(k) instanceof JavaBeanSerializer)) {
+                return NOT_BEAN_GETTERS;
+            }
+            List<FieldInfo> getters = TypeUtils.computeGetters(k, null);
+            for (FieldInfo getter : getters) {
+                getter.setAccessible();
+            }
+            return getters.toArray(new FieldInfo[0]);
+        });
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private class Segment {
+
+        private final long[] keys;
+        private final long[] times;
+        private final int mask;
+
+        private Segment(int capacity) {
+            this.keys = new long[capacity];
+            this.times = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private synchronized boolean isDuplicate(long key, long now) {
+            int index = (int) key & this.mask;
+            int victim = -1;
+            boolean victimLive = true;
+            for (int probe = 0; probe < MAX_PROBE; probe++) {
+                int i = (index + probe) & this.mask;
+                boolean live = this.keys[i] != 0 && now - this.times[i] < windowNanos;
+                if (this.keys[i] == key) {
+                    if (live) {
+                        return true;
+                    }
+                    this.times[i] = now;
+                    return false;
+                }
+                // 优先使用空槽或已过期的槽, 否则覆盖最旧的记录
+                if (!live) {
+                    if (victimLive) {
+                        victim = i;
+                        victimLive = false;
+                    }
+                } else if (victimLive && (victim < 0 || this.times[i] - this.times[victim] < 0)) {
+                    victim = i;
+                }
+            }
+            if (victimLive) {
+                evictionCount.increment();
+            }
+            this.keys[victim] = key;
+            this.times[victim] = now;
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package vip.toby.rpc.server;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量确认, 按数量或时间以 multiple=true 确认
+ * <p>
+ * 调用可能乱序完成, 每个 channel 只确认到最小的未完成 deliveryTag 之前, 保证不会确认仍在处理的消息
+ *
+ * @author toby
+ */
+class RpcServerAckBatcher {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RpcServerAckBatcher.class);
+
+    private final static ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "simple-rpc-ack");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Channel, ChannelAcks> channelAckMap = new ConcurrentHashMap<>();
+    private final String name;
+    private final int batchSize;
+    private final ScheduledFuture<?> flushFuture;
+
+    RpcServerAckBatcher(String name, int batchSize, long batchTime) {
+        this.name = name;
+        this.batchSize = batchSize;
+        this.flushFuture = SCHEDULER.scheduleWithFixedDelay(this::flush, batchTime, batchTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 收到消息, 必须在消费者线程调用, 保证 deliveryTag 按顺序登记
+     */
+    void received(Channel channel, long deliveryTag) {
+        getChannelAcks(channel).received(deliveryTag);
+    }
+
+    /**
+     * 处理完成, 达到批量数量时确认
+     */
+    void ack(Channel channel, long deliveryTag) {
+        getChannelAcks(channel).completed(deliveryTag, true);
+    }
+
+    /**
+     * 已单独 nack 的消息, 只移除登记
+     */
+    void discard(Channel channel, long deliveryTag) {
+        getChannelAcks(channel).completed(deliveryTag, false);
+    }
+
+    void flush() {
+        this.channelAckMap.forEach((channel, channelAcks) -> {
+            if (!channel.isOpen()) {
+                // channel 关闭后未确认的消息由 broker 重新投递
+                this.channelAckMap.remove(channel, channelAcks);
+                return;
+            }
+            channelAcks.flush();
+        });
+    }
+
+    void close() {
+        this.flushFuture.cancel(false);
+        flush();
+    }
+
+    private ChannelAcks getChannelAcks(Channel channel) {
+        return this.channelAckMap.computeIfAbsent(channel, ChannelAcks::new);
+    }
+
+    private class ChannelAcks {
+
+        private final Channel channel;
+        private final TreeSet<Long> pendingTags = new TreeSet<>();
+        private long maxCompletedTag;
+        private long ackedTag;
+        private int completedCount;
+
+        private ChannelAcks(Channel channel) {
+            this.channel = channel;
+        }
+
+        private synchronized void received(long deliveryTag) {
+            this.pendingTags.add(deliveryTag);
+        }
+
+        private synchronized void completed(long deliveryTag, boolean ack) {
+            this.pendingTags.remove(deliveryTag);
+            if (ack) {
+                this.maxCompletedTag = Math.max(this.maxCompletedTag, deliveryTag);
+                this.completedCount++;
+            }
+            if (this.completedCount >= batchSize) {
+                flush();
+            }
+        }
+
+        private synchronized void flush() {
+            if (this.completedCount == 0) {
+                return;
+            }
+            // 只能确认到最小的未完成 deliveryTag 之前
+            long ackTag = this.pendingTags.isEmpty() ? this.maxCompletedTag : Math.min(this.pendingTags.first() - 1, this.maxCompletedTag);
+            if (ackTag <= this.ackedTag) {
+                return;
+            }
+            try {
+                this.channel.basicAck(ackTag, true);
+                this.ackedTag = ackTag;
+                if (ackTag == this.maxCompletedTag) {
+                    this.completedCount = 0;
+                }
+            } catch (IOException e) {
+                LOGGER.error(name + " Ack Exception! DeliveryTag: " + ackTag);
+                LOGGER.error(e.getMessage(), e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package vip.toby.rpc.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vip.toby.rpc.properties.RpcProperties;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RpcServer 执行线程池, 与 AMQP 消费者解耦
+ *
+ * @author toby
+ */
+final class RpcServerExecutorFactory {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(RpcServerExecutorFactory.class);
+
+    static final String NONE = "none";
+    static final String FIXED = "fixed";
+    static final String FORK_JOIN = "fork-join";
+    static final String VIRTUAL = "virtual";
+
+    private RpcServerExecutorFactory() {
+    }
+
+    /**
+     * 创建执行线程池, none 时返回 null 表示在消费者线程执行
+     */
+    static ExecutorService create(RpcProperties rpcProperties, String name) {
+        String type = rpcProperties.getServerExecutor();
+        int threads = rpcProperties.getServerExecutorThreads();
+        // fork-join、virtual 本身无界, 在途任务同样限制为 线程数 + 队列容量
+        int maxInFlight = threads + rpcProperties.getServerExecutorQueueCapacity();
+        switch (type) {
+            case NONE:
+                return null;
+            case FIXED:
+                // 有界队列, 队列满时抛出 RejectedExecutionException
+                return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(rpcProperties.getServerExecutorQueueCapacity()), threadFactory(name), new ThreadPoolExecutor.AbortPolicy());
+            case FORK_JOIN:
+                return new RpcBoundedExecutorService(new ForkJoinPool(threads, pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName(name + "-" + thread.getPoolIndex());
+                    return thread;
+                }, null, true), maxInFlight);
+            case VIRTUAL:
+                try {
+                    return new RpcBoundedExecutorService((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null), maxInFlight);
+                } catch (ReflectiveOperationException e) {
+                    LOGGER.warn("当前 JDK 不支持虚拟线程, 使用 fork-join 代替, " + name);
+                    return new RpcBoundedExecutorService(new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), maxInFlight);
+                }
+            default:
+                throw new RuntimeException("simple-rpc.server-executor: " + type + " 不支持, 可选 none、fixed、fork-join、virtual");
+        }
+    }
+
+    /**
+     * 每个消费者的 prefetch, 向下取整, 保证在途消息不超过 线程数 + 队列容量; 消费者数量超过该值时每个消费者至少为 1
+     */
+    static int prefetchCount(RpcProperties rpcProperties, int consumers) {
+        int inFlight = rpcProperties.getServerExecutorThreads() + rpcProperties.getServerExecutorQueueCapacity();
+        return Math.max(1, inFlight / consumers);
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
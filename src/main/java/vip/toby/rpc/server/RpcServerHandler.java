@@ -1,9 +1,11 @@
 package vip.toby.rpc.server;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.alibaba.fastjson.parser.ParserConfig;
 import com.alibaba.fastjson.parser.deserializer.JavaBeanDeserializer;
+import com.alibaba.fastjson.util.ParameterizedTypeImpl;
 import com.rabbitmq.client.AMQP.BasicProperties;
 import com.rabbitmq.client.Channel;
 import net.sf.cglib.reflect.FastClass;
@@ -13,14 +15,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
-import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.validation.annotation.Validated;
 import vip.toby.rpc.annotation.RpcServerMethod;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.codec.RpcCodecFactory;
+import vip.toby.rpc.compress.RpcCompressor;
+import vip.toby.rpc.compress.RpcCompressorFactory;
+import vip.toby.rpc.entity.OperateStatus;
+import vip.toby.rpc.entity.RpcProtocol;
+import vip.toby.rpc.entity.RpcRequest;
 import vip.toby.rpc.entity.RpcType;
 import vip.toby.rpc.entity.ServerResult;
 import vip.toby.rpc.entity.ServerStatus;
+import vip.toby.rpc.log.RpcAccessLogger;
+import vip.toby.rpc.metrics.RpcMethodMetrics;
+import vip.toby.rpc.metrics.RpcMetrics;
 import vip.toby.rpc.properties.RpcProperties;
 
 import javax.validation.ConstraintViolation;
@@ -30,46 +43,71 @@ import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * RpcServerHandler
  *
  * @author toby
  */
-public class RpcServerHandler implements ChannelAwareMessageListener, InitializingBean {
+public class RpcServerHandler implements ChannelAwareBatchMessageListener, InitializingBean, DisposableBean {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(RpcServerHandler.class);
 
-    private final static Map<String, FastMethod> FAST_METHOD_MAP = new ConcurrentHashMap<>();
-    private final static Map<String, Class<?>> FAST_METHOD_PARAMETER_TYPE_MAP = new ConcurrentHashMap<>();
-    private final static Map<String, Boolean> METHOD_ALLOW_DUPLICATE_MAP = new ConcurrentHashMap<>();
-
     private final Object rpcServerBean;
     private final String rpcName;
     private final RpcType rpcType;
     private final Validator validator;
     private final RpcProperties rpcProperties;
     private final RpcServerHandlerInterceptor rpcServerHandlerInterceptor;
+    private final RpcCodec rpcCodec;
+    private final ExecutorService executorService;
+    private final RpcServerAckBatcher rpcServerAckBatcher;
+    private final RpcCompressor rpcCompressor;
+    private final RpcMetrics rpcMetrics;
+    private final RpcAccessLogger rpcAccessLogger;
+    private final LongAdder expiredCount = new LongAdder();
+    // 批量消费中等待调用完成后确认的消息数量
+    private final AtomicInteger batchInFlight = new AtomicInteger();
+    private Map<String, RpcServerMethodDescriptor> rpcServerMethodMap = Collections.emptyMap();
 
-    RpcServerHandler(Object rpcServerBean, String rpcName, RpcType rpcType, Validator validator, RpcProperties rpcProperties, RpcServerHandlerInterceptor rpcServerHandlerInterceptor) {
+    RpcServerHandler(Object rpcServerBean, String rpcName, RpcType rpcType, Validator validator, RpcProperties rpcProperties, RpcServerHandlerInterceptor rpcServerHandlerInterceptor, RpcCodec rpcCodec, ExecutorService executorService, RpcServerAckBatcher rpcServerAckBatcher, RpcCompressor rpcCompressor, RpcMetrics rpcMetrics) {
         this.rpcServerBean = rpcServerBean;
         this.rpcName = rpcName;
         this.rpcType = rpcType;
         this.validator = validator;
         this.rpcProperties = rpcProperties;
         this.rpcServerHandlerInterceptor = rpcServerHandlerInterceptor;
+        this.rpcCodec = rpcCodec;
+        this.executorService = executorService;
+        this.rpcServerAckBatcher = rpcServerAckBatcher;
+        this.rpcCompressor = rpcCompressor;
+        this.rpcMetrics = rpcMetrics;
+        this.rpcAccessLogger = new RpcAccessLogger(RpcMetrics.SERVER, rpcType, rpcName, rpcProperties.getServerSlowCallTime(), rpcProperties);
+        rpcMetrics.counter(RpcMetrics.SERVER + ".expired", this, RpcServerHandler::getExpiredCount, "type", rpcType.getName(), "name", rpcName);
     }
 
     @Override
     public void afterPropertiesSet() throws IllegalAccessException, InstantiationException {
-        // 初始化所有接口
+        // 初始化所有接口, 构建当前 Handler 独立的调用表
+        Map<String, RpcServerMethodDescriptor> rpcServerMethodMap = new HashMap<>();
         Class<?> rpcServerClass = this.rpcServerBean.getClass();
         FastClass fastClass = FastClass.create(rpcServerClass);
         for (Method targetMethod : rpcServerClass.getMethods()) {
@@ -80,39 +118,97 @@ public class RpcServerHandler implements ChannelAwareMessageListener, Initializi
                     if (StringUtils.isBlank(methodName)) {
                         methodName = targetMethod.getName();
                     }
-                    String key = this.rpcType.getName() + "_" + this.rpcName + "_" + methodName;
-                    if (FAST_METHOD_MAP.containsKey(key)) {
+                    if (rpcServerMethodMap.containsKey(methodName)) {
                         throw new RuntimeException("Class: " + rpcServerClass.getName() + ", Method: " + methodName + " 重复");
                     }
                     FastMethod fastMethod = fastClass.getMethod(targetMethod);
                     if (fastMethod == null) {
                         throw new RuntimeException("Class: " + rpcServerClass.getName() + ", Method: " + targetMethod.getName() + " Invoke Exception");
                     }
-                    if (fastMethod.getReturnType() != ServerResult.class) {
-                        throw new RuntimeException("返回类型只能为 ServerResult, Class: " + rpcServerClass.getName() + ", Method: " + fastMethod.getName());
+                    if (fastMethod.getReturnType() != ServerResult.class && !isCompletionStageOfServerResult(targetMethod.getGenericReturnType())) {
+                        throw new RuntimeException("返回类型只能为 ServerResult 或 CompletableFuture<ServerResult>, Class: " + rpcServerClass.getName() + ", Method: " + fastMethod.getName());
                     }
                     Class<?>[] parameterTypes = fastMethod.getParameterTypes();
                     if (parameterTypes == null || parameterTypes.length != 1) {
-                        throw new RuntimeException("只能包含唯一参数且参数类型只能为 JSONObject 或者 JavaBean, Class: " + rpcServerClass.getName() + ", Method: " + fastMethod.getName());
+                        throw new RuntimeException("只能包含唯一参数且参数类型只能为 JSONObject、JavaBean 或者 List<JSONObject/JavaBean>, Class: " + rpcServerClass.getName() + ", Method: " + fastMethod.getName());
                     }
                     Class<?> parameterType = parameterTypes[0];
+                    boolean batch = false;
+                    if (parameterType == List.class) {
+                        // List 参数: 批量消费时同一方法的多条消息合并调用, 每条消息的 data 为一个元素
+                        Type genericParameterType = targetMethod.getGenericParameterTypes()[0];
+                        Type elementType = genericParameterType instanceof ParameterizedType ? ((ParameterizedType) genericParameterType).getActualTypeArguments()[0] : null;
+                        if (!(elementType instanceof Class)) {
+                            throw new RuntimeException("List 参数必须声明元素类型 JSONObject 或者 JavaBean, Class: " + rpcServerClass.getName() + ", Method: " + fastMethod.getName());
+                        }
+                        parameterType = (Class<?>) elementType;
+                        batch = true;
+                    }
+                    Class<?>[] validationHints = null;
                     if (parameterType != JSONObject.class) {
                         if (!isJavaBean(parameterType)) {
-                            throw new RuntimeException("只能包含唯一参数且参数类型只能为 JSONObject 或者 JavaBean, Class: " + rpcServerClass.getName() + ", Method: " + fastMethod.getName());
+                            throw new RuntimeException("只能包含唯一参数且参数类型只能为 JSONObject、JavaBean 或者 List<JSONObject/JavaBean>, Class: " + rpcServerClass.getName() + ", Method: " + fastMethod.getName());
                         }
                         // 提前预热，其实毫无意义
                         validator.validate(JSON.parseObject(JSON.toJSONString(parameterType.newInstance()), parameterType), Default.class);
+                        // JavaBean 参数是否需要校验
+                        for (Annotation ann : targetMethod.getParameters()[0].getAnnotations()) {
+                            // 先尝试获取@Validated注解
+                            Validated validatedAnn = AnnotationUtils.getAnnotation(ann, Validated.class);
+                            // 如果直接标注了@Validated，那么直接开启校验
+                            // 如果没有，那么判断参数前是否有Valid起头的注解
+                            if (validatedAnn != null || ann.annotationType().getSimpleName().startsWith("Valid")) {
+                                validationHints = validated(ann, validatedAnn);
+                                break;
+                            }
+                        }
                     }
-                    FAST_METHOD_MAP.put(key, fastMethod);
-                    FAST_METHOD_PARAMETER_TYPE_MAP.put(key, parameterType);
-                    METHOD_ALLOW_DUPLICATE_MAP.put(key, rpcServerMethod.allowDuplicate());
+                    RpcServerReplyCache replyCache = null;
+                    if (rpcServerMethod.cacheTtl() > 0) {
+                        if (RpcType.SYNC != this.rpcType || batch || rpcServerMethod.cacheMaxSize() < 1) {
+                            throw new RuntimeException("返回报文缓存只支持 SYNC-RpcServer 非 List 参数的方法, 且 cacheMaxSize 必须大于 0, Class: " + rpcServerClass.getName() + ", Method: " + fastMethod.getName());
+                        }
+                        if (!rpcServerMethod.allowDuplicate()) {
+                            // 命中缓存时跳过重复检测, 与 allowDuplicate = false 矛盾
+                            throw new RuntimeException("返回报文缓存需同时设置 allowDuplicate = true, Class: " + rpcServerClass.getName() + ", Method: " + fastMethod.getName());
+                        }
+                        replyCache = new RpcServerReplyCache(rpcServerMethod.cacheMaxSize(), rpcServerMethod.cacheTtl());
+                    }
+                    String key = this.rpcType.getName() + "_" + this.rpcName + "_" + methodName;
+                    Type requestType = new ParameterizedTypeImpl(new Type[]{parameterType}, null, RpcRequest.class);
+                    rpcServerMethodMap.put(methodName, new RpcServerMethodDescriptor(key, methodName, fastMethod, parameterType, requestType, rpcServerMethod.allowDuplicate(), validationHints, batch, replyCache, this.rpcMetrics.method(RpcMetrics.SERVER, this.rpcType, this.rpcName, methodName)));
                     LOGGER.debug(this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + methodName + " 已启动");
                 }
             }
         }
+        this.rpcServerMethodMap = Collections.unmodifiableMap(rpcServerMethodMap);
         LOGGER.info(this.rpcType.getName() + "-RpcServerHandler-" + this.rpcName + " 已启动");
     }
 
+    @Override
+    public void destroy() throws InterruptedException {
+        if (this.executorService != null) {
+            // 容器已停止消费, 等待执行中的调用完成
+            this.executorService.shutdown();
+            if (!this.executorService.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOGGER.warn(this.rpcType.getName() + "-RpcServerHandler-" + this.rpcName + " Executor 关闭超时");
+                this.executorService.shutdownNow();
+            }
+        }
+        if (this.rpcServerAckBatcher != null) {
+            // 确认已完成的消息, 其余由 broker 重新投递
+            this.rpcServerAckBatcher.close();
+        }
+    }
+
+    private static boolean isCompletionStageOfServerResult(Type type) {
+        if (!(type instanceof ParameterizedType)) {
+            return false;
+        }
+        ParameterizedType parameterizedType = (ParameterizedType) type;
+        return parameterizedType.getRawType() instanceof Class && CompletionStage.class.isAssignableFrom((Class<?>) parameterizedType.getRawType()) && parameterizedType.getActualTypeArguments()[0] == ServerResult.class;
+    }
+
     private static boolean isJavaBean(Type type) {
         if (null == type) {
             throw new NullPointerException();
@@ -123,189 +219,764 @@ public class RpcServerHandler implements ChannelAwareMessageListener, Initializi
 
     @Override
     public void onMessage(Message message, Channel channel) throws IOException {
-        ServerStatus serverStatus = ServerStatus.FAILURE;
-        MessageProperties messageProperties = null;
-        String messageStr = null;
+        MessageProperties messageProperties = message.getMessageProperties();
+        // 根据 contentType 选择编解码, 兼容不同编码的客户端
+        RpcCodec rpcCodec = this.rpcCodec;
+        // 已交给 invoke 或已拒绝时, 不在此确认
+        boolean completeLater = false;
+        if (this.rpcServerAckBatcher != null) {
+            this.rpcServerAckBatcher.received(channel, messageProperties.getDeliveryTag());
+        }
+        Long expireTime = expireTime(messageProperties);
+        if (isExpired(messageProperties, expireTime)) {
+            ack(channel, messageProperties);
+            return;
+        }
+        byte[] body;
         try {
-            messageProperties = message.getMessageProperties();
-            messageStr = new String(message.getBody(), StandardCharsets.UTF_8);
-            // 构建返回JSON值
-            JSONObject resultJson = new JSONObject();
-            try {
-                // 组装参数json
-                JSONObject paramData = JSON.parseObject(messageStr);
-                // 获得当前command
-                String command = paramData.getString("command");
-                if (StringUtils.isBlank(command)) {
-                    LOGGER.error("Method Invoke Exception: Command 参数为空, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Received: " + messageStr);
-                    // 此错误一般出现在调试阶段，所以没有处理返回，只打印日志
-                    return;
-                }
-                // 获取data数据
-                JSONObject data = paramData.getJSONObject("data");
-                if (data == null) {
-                    LOGGER.error("Method Invoke Exception: Data 参数错误, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command + ", Received: " + messageStr);
-                    // 此错误一般出现在调试阶段，所以没有处理返回，只打印日志
-                    return;
-                }
-                // 异步执行任务
-                if (RpcType.ASYNC == this.rpcType) {
-                    long start = System.currentTimeMillis();
-                    asyncExecute(command, data, messageProperties.getCorrelationId());
-                    double offset = System.currentTimeMillis() - start;
-                    log(messageStr, command, offset);
+            body = RpcCompressorFactory.decompress(messageProperties.getHeaders(), message.getBody(), this.rpcProperties.getCompressionMaxSize());
+        } catch (Exception e) {
+            LOGGER.error("Decompress Exception! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Compression: " + messageProperties.getHeader(RpcProtocol.COMPRESSION_HEADER));
+            LOGGER.error(e.getMessage(), e);
+            reply(channel, messageProperties, rpcCodec, ServerStatus.FAILURE, null);
+            ack(channel, messageProperties);
+            return;
+        }
+        try {
+            rpcCodec = RpcCodecFactory.getCodecByContentType(messageProperties.getContentType(), this.rpcCodec);
+            // 批量调用
+            if (messageProperties.getHeaders().containsKey(RpcProtocol.BATCH_HEADER)) {
+                JSONArray entries = rpcCodec.decode(body, JSONArray.class);
+                RpcCodec invokeCodec = rpcCodec;
+                completeLater = dispatch(channel, messageProperties, rpcCodec, "Batch", expireTime, () -> invokeBatch(channel, messageProperties, invokeCodec, body, entries));
+                return;
+            }
+            // 返回报文缓存, 通过 command 头定位方法, 命中时不解码直接回复
+            RpcServerReplyCache.Key replyKey = null;
+            Object commandHeader = messageProperties.getHeaders().get(RpcProtocol.COMMAND_HEADER);
+            RpcServerMethodDescriptor cachedDescriptor = commandHeader == null ? null : this.rpcServerMethodMap.get(commandHeader.toString());
+            if (cachedDescriptor != null && cachedDescriptor.getReplyCache() != null) {
+                replyKey = RpcServerReplyCache.key(rpcCodec.getContentType(), body);
+                byte[] replyBody = cachedDescriptor.getReplyCache().get(replyKey);
+                if (replyBody != null) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Reply Cache Hit! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + cachedDescriptor.getCommand());
+                    }
+                    RpcMethodMetrics methodMetrics = cachedDescriptor.getMethodMetrics();
+                    long start = methodMetrics.start();
+                    methodMetrics.requestSize(body.length);
+                    publish(channel, messageProperties, replyBody);
+                    methodMetrics.stop(start, ServerStatus.SUCCESS, OperateStatus.SUCCESS);
+                    methodMetrics.responseSize(replyBody.length);
+                    this.rpcAccessLogger.log(cachedDescriptor.getCommand(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), ServerStatus.SUCCESS, OperateStatus.SUCCESS, rpcCodec, body, replyBody);
                     return;
                 }
-                // 同步执行任务并返回结果
-                long start = System.currentTimeMillis();
-                Object resultData = syncExecute(command, data, messageProperties.getCorrelationId());
-                if (resultData != null) {
-                    long offset = System.currentTimeMillis() - start;
-                    log(messageStr, command, offset);
-                    // 修改状态
-                    serverStatus = ServerStatus.SUCCESS;
-                    resultJson.put("data", resultData);
-                } else {
-                    serverStatus = ServerStatus.NOT_EXIST;
+            }
+            RpcRequest<?> rpcRequest = decode(messageProperties, rpcCodec, body);
+            if (rpcRequest == null) {
+                return;
+            }
+            String command = rpcRequest.getCommand();
+            Object data = rpcRequest.getData();
+            RpcServerMethodDescriptor rpcServerMethodDescriptor = this.rpcServerMethodMap.get(command);
+            if (rpcServerMethodDescriptor == null) {
+                LOGGER.error("Not Found! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
+                reply(channel, messageProperties, rpcCodec, ServerStatus.NOT_EXIST, null);
+                return;
+            }
+            // 对冲请求以幂等键做重复投递检测, 重复的一份不执行也不回复, 由先到的一份回复; 参数重复检测仍在执行时进行, 正常回复 Call Duplicate
+            Object idempotencyKey = messageProperties.getHeaders().get(RpcProtocol.IDEMPOTENCY_KEY_HEADER);
+            if (idempotencyKey != null && this.rpcServerHandlerInterceptor != null && this.rpcServerHandlerInterceptor.rpcDuplicateHandle(rpcServerMethodDescriptor.getKey(), idempotencyKey.toString())) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Hedge Discarded! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
                 }
-            } catch (InvocationTargetException e) {
-                // 获取目标异常
-                Throwable t = e.getTargetException();
-                LOGGER.error("Method Invoke Target Exception! Received: " + messageStr);
-                LOGGER.error(t.getMessage(), t);
-            } catch (Exception e) {
-                LOGGER.error("Method Invoke Exception! Received: " + messageStr);
-                LOGGER.error(e.getMessage(), e);
+                return;
             }
-            // 状态设置
-            resultJson.put("status", serverStatus.getStatus());
-            resultJson.put("message", serverStatus.getMessage());
-            // 构建配置
-            BasicProperties replyProps = new BasicProperties.Builder().correlationId(messageProperties.getCorrelationId()).contentEncoding(StandardCharsets.UTF_8.name()).contentType(messageProperties.getContentType()).build();
-            // 反馈消息
-            channel.basicPublish(messageProperties.getReplyToAddress().getExchangeName(), messageProperties.getReplyToAddress().getRoutingKey(), replyProps, resultJson.toJSONString().getBytes(StandardCharsets.UTF_8));
+            RpcCodec invokeCodec = rpcCodec;
+            Object invokeData = data;
+            // 对冲请求已检测幂等键, 执行时不再检测 correlationId
+            String duplicateCorrelationId = idempotencyKey == null ? messageProperties.getCorrelationId() : null;
+            // command 头与报文一致时才写入缓存
+            RpcServerReplyCache.Key invokeReplyKey = rpcServerMethodDescriptor == cachedDescriptor ? replyKey : null;
+            completeLater = dispatch(channel, messageProperties, rpcCodec, command, expireTime, () -> invoke(channel, messageProperties, invokeCodec, body, rpcServerMethodDescriptor, invokeData, invokeReplyKey, duplicateCorrelationId));
         } catch (Exception e) {
-            LOGGER.error(this.rpcType.getName() + "-RpcServer-" + this.rpcName + " Exception! Received: " + messageStr);
+            LOGGER.error("Method Invoke Exception! Received: " + this.rpcAccessLogger.format(rpcCodec, body));
             LOGGER.error(e.getMessage(), e);
+            reply(channel, messageProperties, rpcCodec, ServerStatus.FAILURE, null);
         } finally {
             // 确认处理任务
-            if (messageProperties != null) {
-                channel.basicAck(messageProperties.getDeliveryTag(), false);
+            if (!completeLater) {
+                ack(channel, messageProperties);
             }
         }
     }
 
-    private void log(String messageStr, String command, double offset) {
-        if (offset > this.rpcProperties.getServerSlowCallTime()) {
-            LOGGER.warn("Call Slowing! Duration: " + offset + "ms, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command + ", Received: " + messageStr);
-        } else {
-            LOGGER.info("Duration: " + offset + "ms, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command + ", Received: " + messageStr);
+    /**
+     * 批量消费, List 参数的方法按方法合并调用, 其余方法逐条调用
+     * <p>
+     * 无法解析、方法不存在、重复或校验不通过的消息单独拒绝, 其余消息在其全部调用完成后确认; 仅用于 ASYNC
+     * <p>
+     * 方法返回 CompletionStage 时不阻塞消费者线程, 每条消息在完成后单独确认, 在途消息仍受 prefetch 限制;
+     * 本批全部同步完成且没有之前批次的在途消息时, 以 multiple=true 一次确认
+     */
+    @Override
+    public void onMessageBatch(List<Message> messages, Channel channel) {
+        long start = System.currentTimeMillis();
+        Map<RpcServerMethodDescriptor, MergedCall> mergedCallMap = new LinkedHashMap<>();
+        List<MessageProperties> acceptedList = new ArrayList<>(messages.size());
+        List<List<CompletableFuture<?>>> futuresList = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            MessageProperties messageProperties = message.getMessageProperties();
+            RpcCodec rpcCodec = this.rpcCodec;
+            byte[] body = message.getBody();
+            List<CompletableFuture<?>> futures = new ArrayList<>();
+            boolean accepted = false;
+            try {
+                rpcCodec = RpcCodecFactory.getCodecByContentType(messageProperties.getContentType(), this.rpcCodec);
+                body = RpcCompressorFactory.decompress(messageProperties.getHeaders(), body, this.rpcProperties.getCompressionMaxSize());
+                if (messageProperties.getHeaders().containsKey(RpcProtocol.BATCH_HEADER)) {
+                    // 客户端批量发送的消息, 无效的调用只记录日志, 整条消息确认
+                    JSONArray entries = rpcCodec.decode(body, JSONArray.class);
+                    for (int i = 0; i < entries.size(); i++) {
+                        JSONObject entry = entries.getJSONObject(i);
+                        RpcRequest<Object> rpcRequest = new RpcRequest<>();
+                        rpcRequest.setCommand(entry == null ? null : entry.getString("command"));
+                        rpcRequest.setData(entry == null ? null : entry.get("data"));
+                        try {
+                            accept(rpcRequest, messageProperties.getCorrelationId() + "_" + i, rpcCodec, mergedCallMap, futures);
+                        } catch (InvocationTargetException e) {
+                            LOGGER.error("Method Invoke Target Exception! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + rpcRequest.getCommand());
+                            LOGGER.error(e.getTargetException().getMessage(), e.getTargetException());
+                        }
+                    }
+                    accepted = true;
+                } else {
+                    accepted = accept(decode(messageProperties, rpcCodec, body), messageProperties.getCorrelationId(), rpcCodec, mergedCallMap, futures);
+                }
+            } catch (InvocationTargetException e) {
+                // 与逐条消费一致, 调用失败同样确认
+                accepted = true;
+                LOGGER.error("Method Invoke Target Exception! Received: " + this.rpcAccessLogger.format(rpcCodec, body));
+                LOGGER.error(e.getTargetException().getMessage(), e.getTargetException());
+            } catch (Exception e) {
+                LOGGER.error("Method Invoke Exception! Received: " + this.rpcAccessLogger.format(rpcCodec, body));
+                LOGGER.error(e.getMessage(), e);
+            }
+            if (accepted) {
+                acceptedList.add(messageProperties);
+                futuresList.add(futures);
+            } else {
+                reject(channel, messageProperties);
+            }
         }
+        mergedCallMap.values().forEach(MergedCall::invoke);
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Duration: " + (System.currentTimeMillis() - start) + "ms, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Batch: " + messages.size());
+        }
+        ackBatch(channel, acceptedList, futuresList);
     }
 
     /**
-     * 异步调用
+     * 确认批量消费的消息, 不等待未完成的调用
+     * <p>
+     * multiple=true 会同时确认该 channel 之前未确认的消息, 只在本批全部完成且没有在途消息时使用
      */
-    private void asyncExecute(String command, Object data, String correlationId) throws InvocationTargetException {
-        // 获取当前服务的反射方法调用
-        String key = this.rpcType.getName() + "_" + this.rpcName + "_" + command;
-        // 通过缓存来优化性能
-        FastMethod fastMethod = FAST_METHOD_MAP.get(key);
-        if (fastMethod == null) {
-            LOGGER.error("Not Found! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
+    private void ackBatch(Channel channel, List<MessageProperties> acceptedList, List<List<CompletableFuture<?>>> futuresList) {
+        if (acceptedList.isEmpty()) {
             return;
         }
-        // 重复调用检测
-        if (this.rpcServerHandlerInterceptor != null && this.rpcServerHandlerInterceptor.rpcDuplicateHandle(key, correlationId)) {
-            LOGGER.warn("Call Duplicate! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
-            return;
+        boolean completed = this.batchInFlight.get() == 0;
+        for (int i = 0; completed && i < futuresList.size(); i++) {
+            for (CompletableFuture<?> future : futuresList.get(i)) {
+                if (!future.isDone()) {
+                    completed = false;
+                    break;
+                }
+            }
         }
-        if (!METHOD_ALLOW_DUPLICATE_MAP.get(key) && this.rpcServerHandlerInterceptor != null && this.rpcServerHandlerInterceptor.duplicateHandle(key, data)) {
-            LOGGER.warn("Call Duplicate! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
+        if (completed) {
+            long ackTag = acceptedList.get(acceptedList.size() - 1).getDeliveryTag();
+            try {
+                channel.basicAck(ackTag, true);
+            } catch (IOException e) {
+                LOGGER.error(this.rpcType.getName() + "-RpcServer-" + this.rpcName + " Ack Exception! DeliveryTag: " + ackTag);
+                LOGGER.error(e.getMessage(), e);
+            }
             return;
         }
-        Class<?> parameterType = FAST_METHOD_PARAMETER_TYPE_MAP.get(key);
-        // JavaBean 参数
-        if (parameterType != JSONObject.class) {
-            data = ((JSONObject) data).toJavaObject(parameterType);
-            // JavaBean 参数是否需要校验
-            Annotation[] annotations = fastMethod.getJavaMethod().getParameters()[0].getAnnotations();
-            for (Annotation ann : annotations) {
-                // 先尝试获取@Validated注解
-                Validated validatedAnn = AnnotationUtils.getAnnotation(ann, Validated.class);
-                // 如果直接标注了@Validated，那么直接开启校验
-                // 如果没有，那么判断参数前是否有Valid起头的注解
-                if (validatedAnn != null || ann.annotationType().getSimpleName().startsWith("Valid")) {
-                    Class<?>[] validationHints = validated(ann, validatedAnn);
-                    //执行校验
-                    Set<ConstraintViolation<Object>> constraintViolations = validator.validate(validationHints);
-                    if (!constraintViolations.isEmpty()) {
-                        // 校验不合格处理
-                        List<String> tipList = new ArrayList<>();
-                        constraintViolations.forEach(constraintViolationImpl -> tipList.add(constraintViolationImpl.getMessage()));
-                        LOGGER.error("Param Invalid! Detail: " + StringUtils.join(tipList, ", ") + ", " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
-                        return;
+        for (int i = 0; i < acceptedList.size(); i++) {
+            MessageProperties messageProperties = acceptedList.get(i);
+            List<CompletableFuture<?>> futures = futuresList.get(i);
+            this.batchInFlight.incrementAndGet();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((v, throwable) -> {
+                try {
+                    ack(channel, messageProperties);
+                } finally {
+                    this.batchInFlight.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    /**
+     * 批量消费中的单个调用, List 参数的方法加入合并调用, 其余方法直接调用; 返回 false 表示无效
+     */
+    private boolean accept(RpcRequest<?> rpcRequest, String correlationId, RpcCodec rpcCodec, Map<RpcServerMethodDescriptor, MergedCall> mergedCallMap, List<CompletableFuture<?>> futures) throws InvocationTargetException {
+        if (rpcRequest == null) {
+            return false;
+        }
+        RpcServerMethodDescriptor rpcServerMethodDescriptor = rpcRequest.getCommand() == null ? null : this.rpcServerMethodMap.get(rpcRequest.getCommand());
+        if (rpcServerMethodDescriptor == null) {
+            LOGGER.error("Not Found! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + rpcRequest.getCommand());
+            return false;
+        }
+        Object data = rpcRequest.getData();
+        if (data == null) {
+            LOGGER.error("Method Invoke Exception: Data 参数错误, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + rpcRequest.getCommand());
+            return false;
+        }
+        if (!rpcServerMethodDescriptor.isBatch()) {
+            Object request = data;
+            long start = rpcServerMethodDescriptor.getMethodMetrics().start();
+            Object result;
+            try {
+                result = execute(rpcServerMethodDescriptor, request, correlationId);
+            } catch (InvocationTargetException e) {
+                record(rpcServerMethodDescriptor, start, rpcCodec, request, null, e.getTargetException());
+                throw e;
+            } catch (RuntimeException e) {
+                record(rpcServerMethodDescriptor, start, rpcCodec, request, null, e);
+                throw e;
+            }
+            if (result instanceof CompletionStage) {
+                futures.add(((CompletionStage<?>) result).toCompletableFuture().whenComplete((serverResult, throwable) -> {
+                    if (throwable != null) {
+                        LOGGER.error("Method Invoke Target Exception! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + rpcServerMethodDescriptor.getCommand());
+                        LOGGER.error(throwable.getMessage(), throwable);
                     }
-                    break;
+                    record(rpcServerMethodDescriptor, start, rpcCodec, request, serverResult, throwable);
+                }));
+            } else {
+                record(rpcServerMethodDescriptor, start, rpcCodec, request, result, null);
+            }
+            return true;
+        }
+        ServerResult invalidResult = checkDuplicate(rpcServerMethodDescriptor, data, correlationId);
+        if (invalidResult == null) {
+            data = convert(rpcServerMethodDescriptor, data);
+            invalidResult = validate(rpcServerMethodDescriptor, data);
+        }
+        if (invalidResult != null) {
+            return false;
+        }
+        MergedCall mergedCall = mergedCallMap.computeIfAbsent(rpcServerMethodDescriptor, MergedCall::new);
+        mergedCall.add(data, rpcCodec);
+        futures.add(mergedCall.future);
+        return true;
+    }
+
+    /**
+     * 记录批量消费中单个调用的指标及访问日志, 请求报文为该调用的参数
+     */
+    private void record(RpcServerMethodDescriptor rpcServerMethodDescriptor, long start, RpcCodec rpcCodec, Object data, Object serverResult, Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        ServerStatus serverStatus = throwable == null ? ServerStatus.SUCCESS : ServerStatus.FAILURE;
+        OperateStatus operateStatus = throwable == null && serverResult instanceof ServerResult ? ((ServerResult) serverResult).getOperateStatus() : null;
+        rpcServerMethodDescriptor.getMethodMetrics().stop(start, serverStatus, operateStatus);
+        this.rpcAccessLogger.log(rpcServerMethodDescriptor.getCommand(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), serverStatus, operateStatus, rpcCodec, data, null);
+    }
+
+    /**
+     * 批量消费中同一 List 参数方法的合并调用, 完成后逐条记录指标及访问日志
+     */
+    private final class MergedCall {
+
+        private final RpcServerMethodDescriptor rpcServerMethodDescriptor;
+        private final List<Object> dataList = new ArrayList<>();
+        private final List<Long> starts = new ArrayList<>();
+        private final List<RpcCodec> rpcCodecs = new ArrayList<>();
+        // 合并调用完成, 不会异常完成
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private MergedCall(RpcServerMethodDescriptor rpcServerMethodDescriptor) {
+            this.rpcServerMethodDescriptor = rpcServerMethodDescriptor;
+        }
+
+        private void add(Object data, RpcCodec rpcCodec) {
+            this.dataList.add(data);
+            this.starts.add(this.rpcServerMethodDescriptor.getMethodMetrics().start());
+            this.rpcCodecs.add(rpcCodec);
+        }
+
+        private void invoke() {
+            try {
+                Object result = this.rpcServerMethodDescriptor.getFastMethod().invoke(rpcServerBean, new Object[]{this.dataList});
+                if (result instanceof CompletionStage) {
+                    ((CompletionStage<?>) result).whenComplete(this::complete);
+                    return;
                 }
+                complete(result, null);
+            } catch (InvocationTargetException e) {
+                complete(null, e.getTargetException());
+            } catch (RuntimeException e) {
+                complete(null, e);
+            }
+        }
+
+        private void complete(Object serverResult, Throwable throwable) {
+            try {
+                if (throwable != null) {
+                    LOGGER.error("Method Invoke Target Exception! " + rpcType.getName() + "-RpcServer-" + rpcName + ", Method: " + this.rpcServerMethodDescriptor.getCommand() + ", Size: " + this.dataList.size());
+                    LOGGER.error(throwable.getMessage(), throwable);
+                }
+                for (int i = 0; i < this.dataList.size(); i++) {
+                    record(this.rpcServerMethodDescriptor, this.starts.get(i), this.rpcCodecs.get(i), this.dataList.get(i), serverResult, throwable);
+                }
+            } finally {
+                this.future.complete(null);
             }
         }
-        // 通过发射来调用方法
-        fastMethod.invoke(this.rpcServerBean, new Object[]{data});
     }
 
     /**
-     * 同步调用
+     * 解码请求, command 或 data 为空时返回 null
      */
-    private Object syncExecute(String command, Object data, String correlationId) throws InvocationTargetException {
-        // 获取当前服务的反射方法调用
-        String key = this.rpcType.getName() + "_" + this.rpcName + "_" + command;
-        // 通过缓存来优化性能
-        FastMethod fastMethod = FAST_METHOD_MAP.get(key);
-        if (fastMethod == null) {
-            LOGGER.error("Not Found! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
+    private RpcRequest<?> decode(MessageProperties messageProperties, RpcCodec rpcCodec, byte[] body) {
+        // 获得当前command, 新版本客户端通过消息头传递, 此时 data 直接解码为参数类型
+        String command = messageProperties.getHeader(RpcProtocol.COMMAND_HEADER);
+        RpcRequest<?> rpcRequest;
+        if (StringUtils.isBlank(command)) {
+            // 组装参数json
+            JSONObject paramData = rpcCodec.decode(body, JSONObject.class);
+            command = paramData.getString("command");
+            if (StringUtils.isBlank(command)) {
+                LOGGER.error("Method Invoke Exception: Command 参数为空, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Received: " + this.rpcAccessLogger.format(rpcCodec, body));
+                // 此错误一般出现在调试阶段，所以没有处理返回，只打印日志
+                return null;
+            }
+            RpcRequest<JSONObject> jsonRequest = new RpcRequest<>();
+            jsonRequest.setData(paramData.getJSONObject("data"));
+            rpcRequest = jsonRequest;
+        } else {
+            RpcServerMethodDescriptor rpcServerMethodDescriptor = this.rpcServerMethodMap.get(command);
+            rpcRequest = rpcCodec.decode(body, rpcServerMethodDescriptor == null ? RpcRequest.class : rpcServerMethodDescriptor.getRequestType());
+        }
+        rpcRequest.setCommand(command);
+        // 获取data数据
+        if (rpcRequest.getData() == null) {
+            LOGGER.error("Method Invoke Exception: Data 参数错误, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command + ", Received: " + this.rpcAccessLogger.format(rpcCodec, body));
+            // 此错误一般出现在调试阶段，所以没有处理返回，只打印日志
             return null;
         }
-        // 重复调用检测
-        if (this.rpcServerHandlerInterceptor != null && this.rpcServerHandlerInterceptor.rpcDuplicateHandle(key, correlationId)) {
-            LOGGER.warn("Call Duplicate! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
-            ServerResult resultData = ServerResult.buildFailureMessage("Call Duplicate").errorCode(-1);
-            return resultData.toString();
-        }
-        if (!METHOD_ALLOW_DUPLICATE_MAP.get(key) && this.rpcServerHandlerInterceptor != null && this.rpcServerHandlerInterceptor.duplicateHandle(key, data)) {
-            LOGGER.warn("Call Duplicate! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
-            ServerResult resultData = ServerResult.buildFailureMessage("Call Duplicate").errorCode(-1);
-            return resultData.toString();
-        }
-        Class<?> parameterType = FAST_METHOD_PARAMETER_TYPE_MAP.get(key);
-        // JavaBean 参数
-        if (parameterType != JSONObject.class) {
-            data = ((JSONObject) data).toJavaObject(parameterType);
-            // JavaBean 参数是否需要校验
-            Annotation[] annotations = fastMethod.getJavaMethod().getParameters()[0].getAnnotations();
-            for (Annotation ann : annotations) {
-                // 先尝试获取@Validated注解
-                Validated validatedAnn = AnnotationUtils.getAnnotation(ann, Validated.class);
-                // 如果直接标注了@Validated，那么直接开启校验
-                // 如果没有，那么判断参数前是否有Valid起头的注解
-                if (validatedAnn != null || ann.annotationType().getSimpleName().startsWith("Valid")) {
-                    Class<?>[] validationHints = validated(ann, validatedAnn);
-                    //执行校验
-                    Set<ConstraintViolation<Object>> constraintViolations = validator.validate(data, validationHints);
-                    if (!constraintViolations.isEmpty()) {
-                        // 校验不合格处理
-                        List<String> tipList = new ArrayList<>();
-                        constraintViolations.forEach(constraintViolationImpl -> tipList.add(constraintViolationImpl.getMessage()));
-                        LOGGER.error("Param Invalid! Detail: " + StringUtils.join(tipList, ", ") + ", " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
-                        ServerResult resultData = ServerResult.buildFailureMessage(StringUtils.join(tipList, ", "));
-                        return resultData.toString();
-                    }
-                    break;
+        return rpcRequest;
+    }
+
+    /**
+     * 按服务端时钟计算的超时时刻(System.nanoTime), 未携带超时时间返回 null
+     * <p>
+     * 超时时间为相对值, 从收到消息时开始计时; 配置 simple-rpc.server-clock-skew 时, 按客户端发送时间扣除在队列中等待的时间,
+     * 等待时间先减去允许的时钟偏差, 偏差不超过该值时不会因客户端时钟而丢弃请求
+     */
+    private Long expireTime(MessageProperties messageProperties) {
+        Object timeout = messageProperties.getHeaders().get(RpcProtocol.TIMEOUT_HEADER);
+        if (!(timeout instanceof Number)) {
+            return null;
+        }
+        // 避免 nanoTime 相加溢出
+        long budget = Math.min(((Number) timeout).longValue(), TimeUnit.DAYS.toMillis(1));
+        int clockSkew = this.rpcProperties.getServerClockSkew();
+        Object sentTime = messageProperties.getHeaders().get(RpcProtocol.SENT_TIME_HEADER);
+        if (clockSkew >= 0 && sentTime instanceof Number) {
+            budget -= Math.max(0, System.currentTimeMillis() - ((Number) sentTime).longValue() - clockSkew);
+        }
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+    }
+
+    /**
+     * 是否已超时, 客户端已放弃等待, 不再处理也不回复
+     */
+    private boolean isExpired(MessageProperties messageProperties, Long expireTime) {
+        if (expireTime == null) {
+            return false;
+        }
+        long expired = System.nanoTime() - expireTime;
+        if (expired < 0) {
+            return false;
+        }
+        this.expiredCount.increment();
+        LOGGER.warn("Call Expired! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + messageProperties.getHeaders().get(RpcProtocol.COMMAND_HEADER) + ", Expired: " + TimeUnit.NANOSECONDS.toMillis(expired) + "ms");
+        return true;
+    }
+
+    /**
+     * 超时被丢弃的调用数量
+     */
+    public long getExpiredCount() {
+        return this.expiredCount.sum();
+    }
+
+    /**
+     * 在消费者线程或执行线程池执行调用, 返回 true 表示由调用负责确认
+     */
+    private boolean dispatch(Channel channel, MessageProperties messageProperties, RpcCodec rpcCodec, String command, Long expireTime, Runnable task) throws IOException {
+        if (this.executorService == null) {
+            task.run();
+            return true;
+        }
+        try {
+            // 解码在消费者线程完成, 调用交给执行线程池; 排队期间超时的调用不再执行
+            this.executorService.execute(() -> {
+                if (isExpired(messageProperties, expireTime)) {
+                    ack(channel, messageProperties);
+                    return;
+                }
+                task.run();
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Executor Rejected! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
+            if (RpcType.ASYNC == this.rpcType) {
+                // ASYNC 重新入队, 由其他消费者或稍后处理
+                if (this.rpcServerAckBatcher != null) {
+                    this.rpcServerAckBatcher.discard(channel, messageProperties.getDeliveryTag());
                 }
+                channel.basicNack(messageProperties.getDeliveryTag(), false, true);
+                return true;
+            }
+            reply(channel, messageProperties, rpcCodec, ServerStatus.UNAVAILABLE, null);
+            return false;
+        }
+    }
+
+    /**
+     * 执行批量调用, 全部完成后按顺序回复并确认处理任务
+     */
+    private void invokeBatch(Channel channel, MessageProperties messageProperties, RpcCodec rpcCodec, byte[] body, JSONArray entries) {
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<JSONObject>> futures = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            // 每个调用使用独立的 correlationId, 避免同一批次内被判定为重复调用
+            futures.add(invokeEntry(entries.getJSONObject(i), messageProperties.getCorrelationId() + "_" + i));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((v, throwable) -> {
+            try {
+                JSONArray replies = new JSONArray(futures.size());
+                futures.forEach(future -> replies.add(future.join()));
+                this.rpcAccessLogger.log("Batch", System.currentTimeMillis() - start, ServerStatus.SUCCESS, null, rpcCodec, body, null);
+                if (RpcType.SYNC == this.rpcType) {
+                    JSONObject resultJson = buildReply(ServerStatus.SUCCESS, null);
+                    resultJson.put("data", replies);
+                    publish(channel, messageProperties, rpcCodec, resultJson);
+                }
+            } finally {
+                ack(channel, messageProperties);
+            }
+        });
+    }
+
+    /**
+     * 执行批量调用中的单个调用, 返回该调用的返回报文, 不会异常完成
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<JSONObject> invokeEntry(JSONObject entry, String correlationId) {
+        String command = entry == null ? null : entry.getString("command");
+        RpcServerMethodDescriptor rpcServerMethodDescriptor = command == null ? null : this.rpcServerMethodMap.get(command);
+        if (rpcServerMethodDescriptor == null) {
+            LOGGER.error("Not Found! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
+            return CompletableFuture.completedFuture(buildReply(ServerStatus.NOT_EXIST, null));
+        }
+        Object data = entry.get("data");
+        if (data == null) {
+            LOGGER.error("Method Invoke Exception: Data 参数错误, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
+            return CompletableFuture.completedFuture(buildReply(ServerStatus.FAILURE, null));
+        }
+        RpcMethodMetrics methodMetrics = rpcServerMethodDescriptor.getMethodMetrics();
+        long start = methodMetrics.start();
+        CompletableFuture<Object> future;
+        try {
+            Object result = execute(rpcServerMethodDescriptor, data, correlationId);
+            future = result instanceof CompletionStage ? ((CompletionStage<Object>) result).toCompletableFuture() : CompletableFuture.completedFuture(result);
+        } catch (InvocationTargetException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e.getTargetException());
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.handle((serverResult, throwable) -> {
+            if (throwable instanceof CompletionException && throwable.getCause() != null) {
+                throwable = throwable.getCause();
+            }
+            if (throwable != null) {
+                methodMetrics.stop(start, ServerStatus.FAILURE, null);
+                LOGGER.error("Method Invoke Target Exception! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
+                LOGGER.error(throwable.getMessage(), throwable);
+                return buildReply(ServerStatus.FAILURE, null);
+            }
+            if (RpcType.SYNC == this.rpcType && serverResult == null) {
+                methodMetrics.stop(start, ServerStatus.FAILURE, null);
+                LOGGER.error("Method Invoke Exception! 返回值不能为 null, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
+                return buildReply(ServerStatus.FAILURE, null);
+            }
+            methodMetrics.stop(start, ServerStatus.SUCCESS, serverResult == null ? null : ((ServerResult) serverResult).getOperateStatus());
+            return buildReply(ServerStatus.SUCCESS, (ServerResult) serverResult);
+        });
+    }
+
+    /**
+     * 执行调用并回复, 完成后确认处理任务
+     */
+    private void invoke(Channel channel, MessageProperties messageProperties, RpcCodec rpcCodec, byte[] body, RpcServerMethodDescriptor rpcServerMethodDescriptor, Object data, RpcServerReplyCache.Key replyKey, String duplicateCorrelationId) {
+        RpcMethodMetrics methodMetrics = rpcServerMethodDescriptor.getMethodMetrics();
+        long start = methodMetrics.start();
+        methodMetrics.requestSize(body.length);
+        // 返回 CompletableFuture 的方法在完成后才回复和确认
+        boolean completeLater = false;
+        try {
+            Object result = execute(rpcServerMethodDescriptor, data, duplicateCorrelationId);
+            if (result instanceof CompletionStage) {
+                completeLater = true;
+                ((CompletionStage<?>) result).whenComplete((serverResult, throwable) -> {
+                    try {
+                        complete(channel, messageProperties, rpcCodec, body, rpcServerMethodDescriptor, replyKey, start, serverResult, throwable);
+                    } finally {
+                        ack(channel, messageProperties);
+                    }
+                });
+                return;
+            }
+            complete(channel, messageProperties, rpcCodec, body, rpcServerMethodDescriptor, replyKey, start, result, null);
+        } catch (InvocationTargetException e) {
+            complete(channel, messageProperties, rpcCodec, body, rpcServerMethodDescriptor, replyKey, start, null, e.getTargetException());
+        } catch (Exception e) {
+            methodMetrics.stop(start, ServerStatus.FAILURE, null);
+            LOGGER.error("Method Invoke Exception! Received: " + this.rpcAccessLogger.format(rpcCodec, body));
+            LOGGER.error(e.getMessage(), e);
+            reply(channel, messageProperties, rpcCodec, ServerStatus.FAILURE, null);
+        } finally {
+            // 确认处理任务
+            if (!completeLater) {
+                ack(channel, messageProperties);
             }
         }
-        // 通过发射来调用方法
-        return fastMethod.invoke(this.rpcServerBean, new Object[]{data}).toString();
+    }
+
+    /**
+     * 调用完成, SYNC 回复调用结果; start 为纳秒
+     */
+    private void complete(Channel channel, MessageProperties messageProperties, RpcCodec rpcCodec, byte[] body, RpcServerMethodDescriptor rpcServerMethodDescriptor, RpcServerReplyCache.Key replyKey, long start, Object serverResult, Throwable throwable) {
+        String command = rpcServerMethodDescriptor.getCommand();
+        RpcMethodMetrics methodMetrics = rpcServerMethodDescriptor.getMethodMetrics();
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        if (throwable != null) {
+            methodMetrics.stop(start, ServerStatus.FAILURE, null);
+            LOGGER.error("Method Invoke Target Exception! Received: " + this.rpcAccessLogger.format(rpcCodec, body));
+            LOGGER.error(throwable.getMessage(), throwable);
+            reply(channel, messageProperties, rpcCodec, ServerStatus.FAILURE, null);
+            return;
+        }
+        if (RpcType.SYNC == this.rpcType && serverResult == null) {
+            methodMetrics.stop(start, ServerStatus.FAILURE, null);
+            LOGGER.error("Method Invoke Exception! 返回值不能为 null, " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + command);
+            reply(channel, messageProperties, rpcCodec, ServerStatus.FAILURE, null);
+            return;
+        }
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        OperateStatus operateStatus = serverResult == null ? null : ((ServerResult) serverResult).getOperateStatus();
+        methodMetrics.stop(start, ServerStatus.SUCCESS, operateStatus);
+        if (RpcType.SYNC != this.rpcType) {
+            this.rpcAccessLogger.log(command, duration, ServerStatus.SUCCESS, operateStatus, rpcCodec, body, null);
+            return;
+        }
+        byte[] replyBody = encode(messageProperties, rpcCodec, buildReply(ServerStatus.SUCCESS, (ServerResult) serverResult));
+        this.rpcAccessLogger.log(command, duration, ServerStatus.SUCCESS, operateStatus, rpcCodec, body, replyBody);
+        if (replyBody == null) {
+            return;
+        }
+        methodMetrics.responseSize(replyBody.length);
+        if (replyKey != null && operateStatus == OperateStatus.SUCCESS) {
+            // 只缓存成功的返回报文
+            rpcServerMethodDescriptor.getReplyCache().put(replyKey, replyBody);
+        }
+        publish(channel, messageProperties, replyBody);
+    }
+
+    /**
+     * 回复消息, 仅 SYNC
+     */
+    private void reply(Channel channel, MessageProperties messageProperties, RpcCodec rpcCodec, ServerStatus serverStatus, ServerResult serverResult) {
+        if (RpcType.SYNC != this.rpcType) {
+            return;
+        }
+        publish(channel, messageProperties, rpcCodec, buildReply(serverStatus, serverResult));
+    }
+
+    /**
+     * 构建返回JSON值
+     */
+    private static JSONObject buildReply(ServerStatus serverStatus, ServerResult serverResult) {
+        JSONObject resultJson = new JSONObject();
+        resultJson.put("version", RpcProtocol.REPLY_VERSION);
+        resultJson.put("status", serverStatus.getStatus());
+        resultJson.put("message", serverStatus.getMessage());
+        if (serverResult != null) {
+            // 内嵌对象, 与外层报文一次序列化
+            resultJson.put("data", serverResult.toJSONObject());
+        }
+        return resultJson;
+    }
+
+    /**
+     * 发送返回报文
+     */
+    private void publish(Channel channel, MessageProperties messageProperties, RpcCodec rpcCodec, JSONObject resultJson) {
+        byte[] replyBody = encode(messageProperties, rpcCodec, resultJson);
+        if (replyBody != null) {
+            publish(channel, messageProperties, replyBody);
+        }
+    }
+
+    /**
+     * 编码返回报文, 失败返回 null
+     */
+    private byte[] encode(MessageProperties messageProperties, RpcCodec rpcCodec, JSONObject resultJson) {
+        try {
+            return rpcCodec.encode(resultJson);
+        } catch (Exception e) {
+            LOGGER.error(this.rpcType.getName() + "-RpcServer-" + this.rpcName + " Reply Encode Exception! CorrelationId: " + messageProperties.getCorrelationId());
+            LOGGER.error(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 发送已编码的返回报文
+     */
+    private void publish(Channel channel, MessageProperties messageProperties, byte[] replyBody) {
+        try {
+            // 客户端支持时压缩; 声明本端支持的算法, 客户端据此开始压缩请求
+            Map<String, Object> replyHeaders = new HashMap<>(4);
+            replyHeaders.put(RpcProtocol.ACCEPT_COMPRESSION_HEADER, RpcCompressorFactory.getAcceptCompression());
+            if (this.rpcCompressor != null && RpcCompressorFactory.isAccepted(messageProperties.getHeaders(), this.rpcCompressor)) {
+                replyBody = RpcCompressorFactory.compress(this.rpcCompressor, this.rpcProperties.getCompressionThreshold(), replyHeaders, replyBody);
+            }
+            // 构建配置
+            BasicProperties replyProps = new BasicProperties.Builder().correlationId(messageProperties.getCorrelationId()).contentEncoding(StandardCharsets.UTF_8.name()).contentType(messageProperties.getContentType()).headers(replyHeaders).build();
+            // 反馈消息
+            channel.basicPublish(messageProperties.getReplyToAddress().getExchangeName(), messageProperties.getReplyToAddress().getRoutingKey(), replyProps, replyBody);
+        } catch (Exception e) {
+            LOGGER.error(this.rpcType.getName() + "-RpcServer-" + this.rpcName + " Reply Exception! CorrelationId: " + messageProperties.getCorrelationId());
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 确认处理任务
+     */
+    private void ack(Channel channel, MessageProperties messageProperties) {
+        if (this.rpcServerAckBatcher != null) {
+            this.rpcServerAckBatcher.ack(channel, messageProperties.getDeliveryTag());
+            return;
+        }
+        try {
+            channel.basicAck(messageProperties.getDeliveryTag(), false);
+        } catch (IOException e) {
+            LOGGER.error(this.rpcType.getName() + "-RpcServer-" + this.rpcName + " Ack Exception! DeliveryTag: " + messageProperties.getDeliveryTag());
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 拒绝无效消息, 不重新入队
+     */
+    private void reject(Channel channel, MessageProperties messageProperties) {
+        try {
+            channel.basicReject(messageProperties.getDeliveryTag(), false);
+        } catch (IOException e) {
+            LOGGER.error(this.rpcType.getName() + "-RpcServer-" + this.rpcName + " Reject Exception! DeliveryTag: " + messageProperties.getDeliveryTag());
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 执行调用, 返回 ServerResult 或 CompletionStage, ASYNC 忽略返回值; correlationId 为 null 时只检测参数重复
+     */
+    private Object execute(RpcServerMethodDescriptor rpcServerMethodDescriptor, Object data, String correlationId) throws InvocationTargetException {
+        ServerResult duplicateResult = checkDuplicate(rpcServerMethodDescriptor, data, correlationId);
+        if (duplicateResult != null) {
+            return duplicateResult;
+        }
+        return execute(rpcServerMethodDescriptor, data);
+    }
+
+    /**
+     * 不做重复调用检测, 执行调用
+     */
+    private Object execute(RpcServerMethodDescriptor rpcServerMethodDescriptor, Object data) throws InvocationTargetException {
+        data = convert(rpcServerMethodDescriptor, data);
+        ServerResult invalidResult = validate(rpcServerMethodDescriptor, data);
+        if (invalidResult != null) {
+            return invalidResult;
+        }
+        // 通过发射来调用方法, List 参数的方法逐条调用时传入单元素 List
+        return rpcServerMethodDescriptor.getFastMethod().invoke(this.rpcServerBean, new Object[]{rpcServerMethodDescriptor.isBatch() ? Collections.singletonList(data) : data});
+    }
+
+    /**
+     * 重复调用检测, 重复时返回失败结果
+     */
+    private ServerResult checkDuplicate(RpcServerMethodDescriptor rpcServerMethodDescriptor, Object data, String correlationId) {
+        if (isDuplicate(rpcServerMethodDescriptor, data, correlationId)) {
+            LOGGER.warn("Call Duplicate! " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + rpcServerMethodDescriptor.getCommand());
+            return ServerResult.buildFailureMessage("Call Duplicate").errorCode(-1);
+        }
+        return null;
+    }
+
+    /**
+     * correlationId 为 null 时只检测参数重复
+     */
+    private boolean isDuplicate(RpcServerMethodDescriptor rpcServerMethodDescriptor, Object data, String correlationId) {
+        if (this.rpcServerHandlerInterceptor == null) {
+            return false;
+        }
+        return (correlationId != null && this.rpcServerHandlerInterceptor.rpcDuplicateHandle(rpcServerMethodDescriptor.getKey(), correlationId)) || (!rpcServerMethodDescriptor.isAllowDuplicate() && this.rpcServerHandlerInterceptor.duplicateHandle(rpcServerMethodDescriptor.getKey(), data));
+    }
+
+    /**
+     * JavaBean 参数, 旧版本客户端的请求需要由JSONObject转换
+     */
+    private Object convert(RpcServerMethodDescriptor rpcServerMethodDescriptor, Object data) {
+        Class<?> parameterType = rpcServerMethodDescriptor.getParameterType();
+        if (parameterType != JSONObject.class && data instanceof JSONObject) {
+            return ((JSONObject) data).toJavaObject(parameterType);
+        }
+        return data;
+    }
+
+    /**
+     * 参数校验, 不合格时返回失败结果
+     */
+    private ServerResult validate(RpcServerMethodDescriptor rpcServerMethodDescriptor, Object data) {
+        Class<?>[] validationHints = rpcServerMethodDescriptor.getValidationHints();
+        if (validationHints == null) {
+            return null;
+        }
+        //执行校验
+        Set<ConstraintViolation<Object>> constraintViolations = validator.validate(data, validationHints);
+        if (constraintViolations.isEmpty()) {
+            return null;
+        }
+        // 校验不合格处理
+        rpcServerMethodDescriptor.getMethodMetrics().validationFailure();
+        List<String> tipList = new ArrayList<>();
+        constraintViolations.forEach(constraintViolationImpl -> tipList.add(constraintViolationImpl.getMessage()));
+        LOGGER.error("Param Invalid! Detail: " + StringUtils.join(tipList, ", ") + ", " + this.rpcType.getName() + "-RpcServer-" + this.rpcName + ", Method: " + rpcServerMethodDescriptor.getCommand());
+        return ServerResult.buildFailureMessage(StringUtils.join(tipList, ", "));
     }
 
     private Class<?>[] validated(Annotation ann, Validated validatedAnn) {
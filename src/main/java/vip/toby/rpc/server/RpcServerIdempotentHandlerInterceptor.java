@@ -0,0 +1,70 @@
+package vip.toby.rpc.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内置幂等拦截器, 在时间窗口内拒绝相同 correlationId 的重复投递及相同参数的重复调用
+ * <p>
+ * 通过 simple-rpc.server-idempotent-window 开启, 也可以作为 Bean 声明或继承扩展
+ *
+ * @author toby
+ */
+public class RpcServerIdempotentHandlerInterceptor extends RpcServerBaseHandlerInterceptor {
+
+    private final RpcIdempotentStore correlationIdStore;
+    private final RpcIdempotentStore dataStore;
+    private final LongAdder rpcDuplicateCount = new LongAdder();
+    private final LongAdder duplicateCount = new LongAdder();
+
+    /**
+     * @param window   时间窗口(毫秒)
+     * @param capacity 每类记录的最大数量, 超出时覆盖最旧的记录
+     */
+    public RpcServerIdempotentHandlerInterceptor(int window, int capacity) {
+        this.correlationIdStore = new RpcIdempotentStore(window, capacity);
+        this.dataStore = new RpcIdempotentStore(window, capacity);
+    }
+
+    @Override
+    public boolean rpcDuplicateHandle(String method, String correlationId) {
+        if (correlationId == null) {
+            return false;
+        }
+        if (this.correlationIdStore.isDuplicate(RpcIdempotentStore.hash(method) * 31 + RpcIdempotentStore.hash(correlationId))) {
+            this.rpcDuplicateCount.increment();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean duplicateHandle(String method, Object data) {
+        if (this.dataStore.isDuplicate(RpcIdempotentStore.hash(method) * 31 + RpcIdempotentStore.hash(data))) {
+            this.duplicateCount.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 拦截的重复投递数量
+     */
+    public long getRpcDuplicateCount() {
+        return this.rpcDuplicateCount.sum();
+    }
+
+    /**
+     * 拦截的相同参数调用数量
+     */
+    public long getDuplicateCount() {
+        return this.duplicateCount.sum();
+    }
+
+    /**
+     * 容量不足被覆盖的记录数量, 持续增长说明 capacity 过小
+     */
+    public long getEvictionCount() {
+        return this.correlationIdStore.getEvictionCount() + this.dataStore.getEvictionCount();
+    }
+
+}
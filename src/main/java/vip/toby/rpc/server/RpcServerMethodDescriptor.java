@@ -0,0 +1,97 @@
+package vip.toby.rpc.server;
+
+import net.sf.cglib.reflect.FastMethod;
+import vip.toby.rpc.metrics.RpcMethodMetrics;
+
+import java.lang.reflect.Type;
+
+/**
+ * RpcServerMethod 调用描述, 启动时构建, 调用时只读
+ *
+ * @author toby
+ */
+class RpcServerMethodDescriptor {
+
+    private final String key;
+    private final String command;
+    private final FastMethod fastMethod;
+    private final Class<?> parameterType;
+    private final Type requestType;
+    private final boolean allowDuplicate;
+    private final Class<?>[] validationHints;
+    private final boolean batch;
+    private final RpcServerReplyCache replyCache;
+    private final RpcMethodMetrics methodMetrics;
+
+    RpcServerMethodDescriptor(String key, String command, FastMethod fastMethod, Class<?> parameterType, Type requestType, boolean allowDuplicate, Class<?>[] validationHints, boolean batch, RpcServerReplyCache replyCache, RpcMethodMetrics methodMetrics) {
+        this.key = key;
+        this.command = command;
+        this.fastMethod = fastMethod;
+        this.parameterType = parameterType;
+        this.requestType = requestType;
+        this.allowDuplicate = allowDuplicate;
+        this.validationHints = validationHints;
+        this.batch = batch;
+        this.replyCache = replyCache;
+        this.methodMetrics = methodMetrics;
+    }
+
+    /**
+     * 拦截器使用的方法标识: rpcType_rpcName_command
+     */
+    String getKey() {
+        return key;
+    }
+
+    String getCommand() {
+        return command;
+    }
+
+    FastMethod getFastMethod() {
+        return fastMethod;
+    }
+
+    /**
+     * 参数类型, List 参数时为元素类型
+     */
+    Class<?> getParameterType() {
+        return parameterType;
+    }
+
+    /**
+     * RpcRequest&lt;parameterType&gt;, 用于直接解码
+     */
+    Type getRequestType() {
+        return requestType;
+    }
+
+    boolean isAllowDuplicate() {
+        return allowDuplicate;
+    }
+
+    /**
+     * 参数校验分组, 为 null 时不校验
+     */
+    Class<?>[] getValidationHints() {
+        return validationHints;
+    }
+
+    /**
+     * 参数是否为 List, 批量消费时合并调用
+     */
+    boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * 返回报文缓存, 未开启时为 null
+     */
+    RpcServerReplyCache getReplyCache() {
+        return replyCache;
+    }
+
+    RpcMethodMetrics getMethodMetrics() {
+        return methodMetrics;
+    }
+
+}
@@ -1,5 +1,6 @@
 package vip.toby.rpc.server;
 
+import org.apache.commons.lang3.StringUtils;
 import org.hibernate.validator.HibernateValidator;
 import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Binding;
@@ -16,7 +17,13 @@ import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.stereotype.Component;
 import vip.toby.rpc.annotation.RpcServer;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.codec.RpcCodecFactory;
+import vip.toby.rpc.compress.RpcCompressor;
+import vip.toby.rpc.compress.RpcCompressorFactory;
 import vip.toby.rpc.entity.RpcType;
+import vip.toby.rpc.metrics.RpcMetrics;
+import vip.toby.rpc.metrics.RpcMetricsFactory;
 import vip.toby.rpc.properties.RpcProperties;
 
 import javax.validation.Validation;
@@ -26,6 +33,7 @@ import java.lang.annotation.Annotation;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * RpcServerPostProcessor
@@ -48,6 +56,7 @@ public class RpcServerPostProcessor implements BeanPostProcessor {
     private DirectExchange asyncDirectExchange;
     private Validator validator;
     private RpcProperties rpcProperties;
+    private RpcMetrics rpcMetrics;
 
     @Override
     public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
@@ -72,6 +81,8 @@ public class RpcServerPostProcessor implements BeanPostProcessor {
      */
     private void rpcServerStart(Object rpcServerBean, RpcServer rpcServer) {
         String rpcName = rpcServer.value();
+        RpcCodec rpcCodec = RpcCodecFactory.getCodec(StringUtils.isBlank(rpcServer.codec()) ? getRpcProperties().getCodec() : rpcServer.codec());
+        RpcCompressor rpcCompressor = RpcCompressorFactory.getCompressor(StringUtils.isBlank(rpcServer.compression()) ? getRpcProperties().getCompression() : rpcServer.compression());
         for (RpcType rpcType : rpcServer.type()) {
             switch (rpcType) {
                 case SYNC:
@@ -79,14 +90,28 @@ public class RpcServerPostProcessor implements BeanPostProcessor {
                     params.put("x-message-ttl", rpcServer.xMessageTTL());
                     Queue syncQueue = queue(rpcName, rpcType, params);
                     binding(rpcName, rpcType, syncQueue);
-                    RpcServerHandler syncServerHandler = rpcServerHandler(rpcName, rpcType, rpcServerBean, getValidator(), getRpcProperties(), rpcServerBaseHandlerInterceptor);
-                    messageListenerContainer(rpcName, rpcType, syncQueue, syncServerHandler, rpcServer.threadNum());
+                    ExecutorService syncExecutorService = RpcServerExecutorFactory.create(getRpcProperties(), "simple-rpc-" + rpcType.getName() + "-" + rpcName);
+                    RpcServerAckBatcher syncAckBatcher = rpcServerAckBatcher(rpcName, rpcType, rpcServer);
+                    RpcServerHandler syncServerHandler = rpcServerHandler(rpcName, rpcType, rpcServerBean, getValidator(), getRpcProperties(), getRpcServerHandlerInterceptor(), rpcCodec, syncExecutorService, syncAckBatcher, rpcCompressor, getRpcMetrics());
+                    messageListenerContainer(rpcName, rpcType, syncQueue, syncServerHandler, rpcServer, prefetchCount(rpcServer, syncExecutorService != null));
                     break;
                 case ASYNC:
                     Queue asyncQueue = queue(rpcName, rpcType, null);
                     binding(rpcName, rpcType, asyncQueue);
-                    RpcServerHandler asyncServerHandler = rpcServerHandler(rpcName, rpcType, rpcServerBean, getValidator(), getRpcProperties(), rpcServerBaseHandlerInterceptor);
-                    messageListenerContainer(rpcName, rpcType, asyncQueue, asyncServerHandler, rpcServer.threadNum());
+                    if (rpcServer.batchSize() > 1) {
+                        // 批量消费在消费者线程执行, 整批一次确认
+                        RpcServerHandler asyncServerHandler = rpcServerHandler(rpcName, rpcType, rpcServerBean, getValidator(), getRpcProperties(), getRpcServerHandlerInterceptor(), rpcCodec, null, null, rpcCompressor, getRpcMetrics());
+                        SimpleMessageListenerContainer asyncMessageListenerContainer = messageListenerContainer(rpcName, rpcType, asyncQueue, asyncServerHandler, rpcServer, Math.max(rpcServer.batchSize(), rpcServer.prefetchCount() > 0 ? rpcServer.prefetchCount() : getRpcProperties().getServerPrefetchCount()));
+                        asyncMessageListenerContainer.setConsumerBatchEnabled(true);
+                        asyncMessageListenerContainer.setDeBatchingEnabled(true);
+                        asyncMessageListenerContainer.setBatchSize(rpcServer.batchSize());
+                        asyncMessageListenerContainer.setReceiveTimeout(rpcServer.batchTimeout());
+                        break;
+                    }
+                    ExecutorService asyncExecutorService = RpcServerExecutorFactory.create(getRpcProperties(), "simple-rpc-" + rpcType.getName() + "-" + rpcName);
+                    RpcServerAckBatcher asyncAckBatcher = rpcServerAckBatcher(rpcName, rpcType, rpcServer);
+                    RpcServerHandler asyncServerHandler = rpcServerHandler(rpcName, rpcType, rpcServerBean, getValidator(), getRpcProperties(), getRpcServerHandlerInterceptor(), rpcCodec, asyncExecutorService, asyncAckBatcher, rpcCompressor, getRpcMetrics());
+                    messageListenerContainer(rpcName, rpcType, asyncQueue, asyncServerHandler, rpcServer, prefetchCount(rpcServer, asyncExecutorService != null));
                     break;
                 default:
                     break;
@@ -111,19 +136,51 @@ public class RpcServerPostProcessor implements BeanPostProcessor {
     /**
      * 实例化 RpcServerHandler
      */
-    private RpcServerHandler rpcServerHandler(String rpcName, RpcType rpcType, Object rpcServerBean, Validator validator, RpcProperties rpcProperties, RpcServerHandlerInterceptor rpcServerHandlerInterceptor) {
-        return registerBean(this.applicationContext, rpcType.getName() + "-RpcServerHandler-" + rpcName, RpcServerHandler.class, rpcServerBean, rpcName, rpcType, validator, rpcProperties, rpcServerHandlerInterceptor);
+    private RpcServerHandler rpcServerHandler(String rpcName, RpcType rpcType, Object rpcServerBean, Validator validator, RpcProperties rpcProperties, RpcServerHandlerInterceptor rpcServerHandlerInterceptor, RpcCodec rpcCodec, ExecutorService executorService, RpcServerAckBatcher rpcServerAckBatcher, RpcCompressor rpcCompressor, RpcMetrics rpcMetrics) {
+        return registerBean(this.applicationContext, rpcType.getName() + "-RpcServerHandler-" + rpcName, RpcServerHandler.class, rpcServerBean, rpcName, rpcType, validator, rpcProperties, rpcServerHandlerInterceptor, rpcCodec, executorService, rpcServerAckBatcher, rpcCompressor, rpcMetrics);
+    }
+
+    /**
+     * 实例化 RpcServerAckBatcher, 批量数量为 1 时逐条确认
+     */
+    private RpcServerAckBatcher rpcServerAckBatcher(String rpcName, RpcType rpcType, RpcServer rpcServer) {
+        int ackBatchSize = rpcServer.ackBatchSize() > 0 ? rpcServer.ackBatchSize() : getRpcProperties().getServerAckBatchSize();
+        if (ackBatchSize <= 1) {
+            return null;
+        }
+        return new RpcServerAckBatcher(rpcType.getName() + "-RpcServer-" + rpcName, ackBatchSize, getRpcProperties().getServerAckBatchTime());
+    }
+
+    /**
+     * 每个消费者的 prefetch, 优先使用 @RpcServer(prefetchCount), 为 0 时不修改容器默认值
+     */
+    private int prefetchCount(RpcServer rpcServer, boolean executorEnabled) {
+        int prefetchCount = rpcServer.prefetchCount() > 0 ? rpcServer.prefetchCount() : getRpcProperties().getServerPrefetchCount();
+        if (prefetchCount <= 0 && executorEnabled) {
+            // 启用执行线程池时, prefetch 按线程池容量分摊
+            prefetchCount = RpcServerExecutorFactory.prefetchCount(getRpcProperties(), rpcServer.threadNum());
+        }
+        int ackBatchSize = rpcServer.ackBatchSize() > 0 ? rpcServer.ackBatchSize() : getRpcProperties().getServerAckBatchSize();
+        if (prefetchCount > 0 && prefetchCount < ackBatchSize) {
+            // prefetch 小于批量数量时只能等待定时确认
+            throw new RuntimeException(rpcServer.value() + " prefetchCount: " + prefetchCount + " 不能小于 ackBatchSize: " + ackBatchSize);
+        }
+        return prefetchCount;
     }
 
     /**
      * 实例化 SimpleMessageListenerContainer
      */
-    private void messageListenerContainer(String rpcName, RpcType rpcType, Queue queue, RpcServerHandler rpcServerHandler, int threadNum) {
+    private SimpleMessageListenerContainer messageListenerContainer(String rpcName, RpcType rpcType, Queue queue, RpcServerHandler rpcServerHandler, RpcServer rpcServer, int prefetchCount) {
         SimpleMessageListenerContainer messageListenerContainer = registerBean(this.applicationContext, rpcType.getName() + "-MessageListenerContainer-" + rpcName, SimpleMessageListenerContainer.class, this.connectionFactory);
         messageListenerContainer.setQueueNames(queue.getName());
         messageListenerContainer.setMessageListener(rpcServerHandler);
         messageListenerContainer.setAcknowledgeMode(AcknowledgeMode.MANUAL);
-        messageListenerContainer.setConcurrentConsumers(threadNum);
+        messageListenerContainer.setConcurrentConsumers(rpcServer.threadNum());
+        if (prefetchCount > 0) {
+            messageListenerContainer.setPrefetchCount(prefetchCount);
+        }
+        return messageListenerContainer;
     }
 
     /**
@@ -140,6 +197,30 @@ public class RpcServerPostProcessor implements BeanPostProcessor {
         return this.validator;
     }
 
+    /**
+     * 获取拦截器, 未声明且配置了 simple-rpc.server-idempotent-window 时使用内置幂等拦截器
+     */
+    private RpcServerHandlerInterceptor getRpcServerHandlerInterceptor() {
+        if (this.rpcServerBaseHandlerInterceptor == null && getRpcProperties().getServerIdempotentWindow() > 0) {
+            RpcServerIdempotentHandlerInterceptor idempotentHandlerInterceptor = registerBean(this.applicationContext, "rpcServerIdempotentHandlerInterceptor", RpcServerIdempotentHandlerInterceptor.class, getRpcProperties().getServerIdempotentWindow(), getRpcProperties().getServerIdempotentCapacity());
+            getRpcMetrics().counter(RpcMetrics.SERVER + ".idempotent.duplicates", idempotentHandlerInterceptor, RpcServerIdempotentHandlerInterceptor::getRpcDuplicateCount, "kind", "rpc");
+            getRpcMetrics().counter(RpcMetrics.SERVER + ".idempotent.duplicates", idempotentHandlerInterceptor, RpcServerIdempotentHandlerInterceptor::getDuplicateCount, "kind", "data");
+            getRpcMetrics().counter(RpcMetrics.SERVER + ".idempotent.evictions", idempotentHandlerInterceptor, RpcServerIdempotentHandlerInterceptor::getEvictionCount);
+            this.rpcServerBaseHandlerInterceptor = idempotentHandlerInterceptor;
+        }
+        return this.rpcServerBaseHandlerInterceptor;
+    }
+
+    /**
+     * 获取 RpcMetrics, 所有 RpcServer 共用
+     */
+    private RpcMetrics getRpcMetrics() {
+        if (this.rpcMetrics == null) {
+            this.rpcMetrics = RpcMetricsFactory.getRpcMetrics(this.applicationContext, getRpcProperties());
+        }
+        return this.rpcMetrics;
+    }
+
     /**
      * 实例化 RpcProperties
      */
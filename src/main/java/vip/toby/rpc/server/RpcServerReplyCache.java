@@ -0,0 +1,67 @@
+package vip.toby.rpc.server;
+
+import vip.toby.rpc.cache.RpcLruCache;
+
+import java.util.Arrays;
+
+/**
+ * 返回报文缓存, 以 contentType + 请求报文为 key 缓存编码后的返回报文, LRU 淘汰 + 写入后过期
+ * <p>
+ * 命中时跳过解码、重复检测、校验、调用及编码, 只需一次查找和发送
+ *
+ * @author toby
+ */
+class RpcServerReplyCache {
+
+    private final RpcLruCache<Key, byte[]> lruCache;
+
+    RpcServerReplyCache(int maxSize, long ttl) {
+        this.lruCache = new RpcLruCache<>(maxSize, ttl);
+    }
+
+    static Key key(String contentType, byte[] body) {
+        return new Key(contentType, body);
+    }
+
+    /**
+     * 获取未过期的返回报文, 不存在返回 null
+     */
+    byte[] get(Key key) {
+        return this.lruCache.get(key);
+    }
+
+    void put(Key key, byte[] replyBody) {
+        this.lruCache.put(key, replyBody);
+    }
+
+    static final class Key {
+
+        private final String contentType;
+        private final byte[] body;
+        private final int hash;
+
+        private Key(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+            this.hash = 31 * (contentType == null ? 0 : contentType.hashCode()) + Arrays.hashCode(body);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return this.hash == key.hash && (this.contentType == null ? key.contentType == null : this.contentType.equals(key.contentType)) && Arrays.equals(this.body, key.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+}
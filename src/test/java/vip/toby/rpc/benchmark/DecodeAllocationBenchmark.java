@@ -0,0 +1,154 @@
+package vip.toby.rpc.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.util.ParameterizedTypeImpl;
+import vip.toby.rpc.codec.JsonRpcCodec;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.entity.RpcRequest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 服务端请求解码的内存分配对比, 手动运行(不是单元测试):
+ * <p>
+ * 旧路径: String -> JSONObject -> toJavaObject; 新路径: 按 RpcRequest<参数类型> 直接解码
+ * <p>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) vip.toby.rpc.benchmark.DecodeAllocationBenchmark
+ *
+ * @author toby
+ */
+public class DecodeAllocationBenchmark {
+
+    private final static int WARMUP = 200000;
+    private final static int ITERATIONS = 200000;
+
+    public static void main(String[] args) {
+        RpcCodec rpcCodec = new JsonRpcCodec();
+        Flat flat = new Flat();
+        flat.setName("toby");
+        flat.setAge(18);
+        flat.setScore(99.5);
+        run("flat bean", rpcCodec, flat, Flat.class);
+        Nested nested = new Nested();
+        nested.setItems(new ArrayList<>());
+        nested.setAttributes(new LinkedHashMap<>());
+        for (int i = 0; i < 40; i++) {
+            nested.getItems().add("item-" + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            nested.getAttributes().put("key-" + i, "value-" + i);
+        }
+        run("40-entry list + map", rpcCodec, nested, Nested.class);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2048; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        nested.setText(text.toString());
+        run("list + map + 2 KB string", rpcCodec, nested, Nested.class);
+    }
+
+    private static void run(String name, RpcCodec rpcCodec, Object data, Class<?> parameterType) {
+        JSONObject request = new JSONObject();
+        request.put("command", "benchmark");
+        request.put("data", data);
+        byte[] body = rpcCodec.encode(request);
+        Type requestType = new ParameterizedTypeImpl(new Type[]{parameterType}, null, RpcRequest.class);
+        long oldBytes = measure(() -> JSON.parseObject(new String(body, StandardCharsets.UTF_8)).getJSONObject("data").toJavaObject(parameterType));
+        long newBytes = measure(() -> ((RpcRequest<?>) rpcCodec.decode(body, requestType)).getData());
+        System.out.println(name + ", " + body.length + " B body: ~" + oldBytes + " B -> ~" + newBytes + " B per decode");
+    }
+
+    private static long measure(Decoder decoder) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Object sink = null;
+        for (int i = 0; i < WARMUP; i++) {
+            sink = decoder.decode();
+        }
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = decoder.decode();
+        }
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+        if (sink == null) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / ITERATIONS;
+    }
+
+    @FunctionalInterface
+    private interface Decoder {
+        Object decode();
+    }
+
+    public static class Flat {
+
+        private String name;
+        private int age;
+        private double score;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public void setScore(double score) {
+            this.score = score;
+        }
+    }
+
+    public static class Nested {
+
+        private List<String> items;
+        private Map<String, String> attributes;
+        private String text;
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public void setItems(List<String> items) {
+            this.items = items;
+        }
+
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+
+        public void setAttributes(Map<String, String> attributes) {
+            this.attributes = attributes;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+
+}
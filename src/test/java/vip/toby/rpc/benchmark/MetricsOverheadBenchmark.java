@@ -0,0 +1,79 @@
+package vip.toby.rpc.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import vip.toby.rpc.entity.OperateStatus;
+import vip.toby.rpc.entity.RpcType;
+import vip.toby.rpc.entity.ServerStatus;
+import vip.toby.rpc.metrics.RpcMethodMetrics;
+import vip.toby.rpc.metrics.RpcMetrics;
+import vip.toby.rpc.metrics.RpcMetricsFactory;
+import vip.toby.rpc.properties.RpcProperties;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 每次调用记录指标的耗时对比, 手动运行(不是单元测试):
+ * <p>
+ * 每次调用: start、requestSize、responseSize、stop, 与 RpcClientProxy、RpcServerHandler 一致
+ * <p>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) vip.toby.rpc.benchmark.MetricsOverheadBenchmark
+ *
+ * @author toby
+ */
+public class MetricsOverheadBenchmark {
+
+    private final static int WARMUP = 2000000;
+    private final static int ITERATIONS = 5000000;
+
+    public static void main(String[] args) throws InterruptedException {
+        RpcProperties rpcProperties = new RpcProperties();
+        rpcProperties.setMetricsEnabled("true");
+        // 不存在 MeterRegistry 时为 NOOP
+        RpcMetrics noop = RpcMetricsFactory.getRpcMetrics(new DefaultListableBeanFactory(), rpcProperties);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", new SimpleMeterRegistry());
+        RpcMetrics micrometer = RpcMetricsFactory.getRpcMetrics(beanFactory, rpcProperties);
+        if (noop != RpcMetrics.NOOP || micrometer == RpcMetrics.NOOP || beanFactory.getBean(MeterRegistry.class) == null) {
+            throw new IllegalStateException("RpcMetrics 创建失败");
+        }
+        run("NOOP", noop.method(RpcMetrics.CLIENT, RpcType.SYNC, "benchmark", "noop"), 1);
+        run("Micrometer", micrometer.method(RpcMetrics.CLIENT, RpcType.SYNC, "benchmark", "single"), 1);
+        run("Micrometer", micrometer.method(RpcMetrics.CLIENT, RpcType.SYNC, "benchmark", "contended"), 4);
+    }
+
+    private static void run(String name, RpcMethodMetrics methodMetrics, int threads) throws InterruptedException {
+        record(methodMetrics, WARMUP);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch endLatch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                try {
+                    startLatch.await();
+                    record(methodMetrics, ITERATIONS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    endLatch.countDown();
+                }
+            }).start();
+        }
+        long start = System.nanoTime();
+        startLatch.countDown();
+        endLatch.await();
+        // 每个线程各自调用 ITERATIONS 次, 按单个线程的平均耗时计算
+        System.out.println(name + ", " + threads + " thread(s) on one method: ~" + (System.nanoTime() - start) / ITERATIONS + " ns/call");
+    }
+
+    private static void record(RpcMethodMetrics methodMetrics, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            long start = methodMetrics.start();
+            methodMetrics.requestSize(512);
+            methodMetrics.responseSize(2048);
+            methodMetrics.stop(start, ServerStatus.SUCCESS, OperateStatus.SUCCESS);
+        }
+    }
+
+}